@@ -1,18 +1,24 @@
 import jdrasil.algorithms.SmartDecomposer;
 import jdrasil.graph.TreeDecomposition;
-import jdrasil.workontd.DynamicProgrammingOnTreeDecomposition;
 import logic.Structure;
 import logic.formulas.*;
 import logic.quantifiers.*;
 import solver.MSOStateVector;
-import solver.MSOStateVectorFactory;
+import solver.ModelChecker;
+
+import io.BinaryStructure;
+import io.ByteTokenizer;
+import io.FormulaReader;
+import io.PaceReader;
+import io.StructureReader;
+import server.ModelCheckingServer;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Arrays;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 
@@ -25,24 +31,176 @@ public class Main {
     /** All sub-formulas of the formula. */
     private List<Formula> formulas;
 
+    /** The input file, or null if we read from stdin. */
+    private String inputFile;
+
+    /** Number of threads that may be used to parse the structure. */
+    private int parseThreads;
+
+    /** A binary structure that is loaded instead of a structure in the input, or null. */
+    private String structureFile;
+
+    /** A PACE .gr file from which E is loaded instead of a structure in the input, or null. */
+    private String graphFile;
+
+    /** A PACE .td file with a tree decomposition of E that is used instead of computing one, or null. */
+    private String decompositionFile;
+
+    /** A file with queries that are all checked against the structure, or null. */
+    private String batchFile;
+
+    /** If not null, the structure of the input is converted to a binary structure with this name and nothing is solved. */
+    private String convertFile;
+
+    /** If not null, a server is started on this port or Unix-domain socket. */
+    private String serverAddress;
+
+    /** The maximum number of dynamic programs the server runs at the same time. */
+    private int maxChecks;
+
+    /** Default timeout of the server for a check in milliseconds (0 = no timeout). */
+    private long timeout;
+
+    /** If true, the states of the dynamic program are stored outside of the heap. */
+    private boolean offHeap;
+
+    /** If true, equal components of the states are stored only once. */
+    private boolean intern;
+
+    /** Number of threads of the dynamic program. */
+    private int threads;
+
+    /** Minimal number of operations of a subtree to evaluate it in parallel to its siblings. */
+    private int subtreeThreshold;
+
+    /** If true, min queries are solved by branch and bound. */
+    private boolean branchAndBound;
+
+    /** If positive, waiting state vectors are spilled to temporary files while more states are alive. */
+    private long spillBudget;
+
     public static void main(String[] args) {
         Main app = new Main();
+        app.parseArguments(args);
         app.run();
     }
 
     public Main() {
         this.quantifiers = new LinkedList<>();
         this.formulas = new LinkedList<>();
+        this.parseThreads = 1;
+        this.maxChecks = Runtime.getRuntime().availableProcessors();
+        this.timeout = 0;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.subtreeThreshold = ModelChecker.DEFAULT_SUBTREE_THRESHOLD;
+    }
+
+    /**
+     * Parse the command line, which has the form >[options] [file]<. Without file, the input is read from stdin.
+     * @param args The command line arguments.
+     */
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-parse-threads":
+                    this.parseThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "-structure":
+                    this.structureFile = args[++i];
+                    break;
+                case "-gr":
+                    this.graphFile = args[++i];
+                    break;
+                case "-td":
+                    this.decompositionFile = args[++i];
+                    break;
+                case "-batch":
+                    this.batchFile = args[++i];
+                    break;
+                case "-convert":
+                    this.convertFile = args[++i];
+                    break;
+                case "-server":
+                    this.serverAddress = args[++i];
+                    break;
+                case "-max-checks":
+                    this.maxChecks = Integer.parseInt(args[++i]);
+                    break;
+                case "-timeout":
+                    this.timeout = Long.parseLong(args[++i]);
+                    break;
+                case "-off-heap":
+                    this.offHeap = true;
+                    break;
+                case "-intern":
+                    this.intern = true;
+                    break;
+                case "-threads":
+                    this.threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-subtree-threshold":
+                    this.subtreeThreshold = Integer.parseInt(args[++i]);
+                    break;
+                case "-branch-and-bound":
+                    this.branchAndBound = true;
+                    break;
+                case "-spill-budget":
+                    this.spillBudget = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("-")) {
+                        System.err.println("Unknown option " + args[i] + ".");
+                        System.exit(1);
+                    }
+                    this.inputFile = args[i];
+            }
+        }
     }
 
     private void run() {
-        parseStdIn();
+        if (structureFile != null || graphFile != null) loadStructure();
+        if (serverAddress != null) {
+            serve();
+            return;
+        }
+        parseInput();
+        if (convertFile != null) {
+            convertStructure();
+            return;
+        }
         solve();
     }
 
-    private void parseStdIn() {
+    /** Load the structure from a binary or .gr file, the input then only contains quantifiers and formulas. */
+    private void loadStructure() {
+        try {
+            long start = System.nanoTime();
+            String file = structureFile != null ? structureFile : graphFile;
+            this.structure = structureFile != null ? BinaryStructure.read(Paths.get(file)) : PaceReader.readGraph(Paths.get(file));
+            System.out.printf("loaded %s in %d ms%n", file, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Error while loading the structure.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /** Store the parsed structure as binary structure. */
+    private void convertStructure() {
         try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            BinaryStructure.write(structure, Paths.get(convertFile));
+        } catch (IOException e) {
+            System.err.println("Error while writing the binary structure.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private void parseInput() {
+        try {
+            ByteTokenizer in = inputFile == null ? ByteTokenizer.fromStream(System.in) : ByteTokenizer.fromFile(Paths.get(inputFile));
+            StructureReader structureReader = null;
+            FormulaReader formulaReader = null;
             String line;
             String[] ll;
             while ( (line = in.readLine()) != null ) {
@@ -53,6 +211,7 @@ public class Main {
 
                 /* line is >vocabulary <R_i> <arity(R_i)> < and we will fill the structure with life */
                 if (ll[0].equals("vocabulary")) {
+                    if (structureFile != null || graphFile != null) throw new Exception("The structure was already loaded from " + (structureFile != null ? structureFile : graphFile) + "!");
                     this.structure = new Structure();
                     for (int i = 1; i < ll.length; i += 2) {
                         String R = ll[i];
@@ -68,94 +227,24 @@ public class Main {
                     int n = Integer.parseInt(ll[1]);
                     int m = Integer.parseInt(ll[2]);
                     this.structure.initializeUniverse(n);
-                    for (int j = 0; j < m; j++) {
-                        line = in.readLine();
-                        String[] relation = line.split(" ");
-                        if (relation[0].equals("c")) { j--; continue; }
-                        int[] elements = new int[relation.length-1];
-                        for (int k = 1; k < relation.length; k++) elements[k-1] = Integer.parseInt(relation[k]);
-                        structure.setInRelation(relation[0], elements);
-                    }
+                    structureReader = new StructureReader(structure, parseThreads);
+                    structureReader.read(in, m);
                     continue;
                 }
                 if (this.structure.getUniverseSize() < 0) throw new Exception("Second declaration has to be the structure!");
 
-                /* parse and minimization quantifier */
-                if (ll[0].equals("min")) {
-                    Quantifier Q = new OptimizationQuantifier(ll);
-                    quantifiers.add(Q);
-                    continue;
-                }
-
-                /* parse a partition quantifier */
-                if (ll[0].equals("exists")) {
-                    Quantifier Q = new PartitionQuantifier(ll);
-                    quantifiers.add(Q);
-                    continue;
-                }
-
-                /* parse a connected quantifier */
-                if (ll[0].equals("connected")) {
-                    Quantifier Q = new ConnectedQuantifier(ll);
-                    quantifiers.add(Q);
-                    continue;
-                }
-
-                /* parse a forest quantifier */
-                if (ll[0].equals("forest")) {
-                    Quantifier Q = new ForestQuantifier(ll);
-                    quantifiers.add(Q);
-                    continue;
-                }
-
-                /* parse an AxAy formula */
-                if (ll[0].equals("axay")) {
-                    Formula psi = new AxAyFormula(structure);
-                    readClauses(psi, Integer.parseInt(ll[1]), in);
-                    formulas.add(psi);
-                    continue;
-                }
-
-                /* parse an AxEy formula */
-                if (ll[0].equals("axey")) {
-                    Formula psi = new AxEyFormula(structure);
-                    readClauses(psi, Integer.parseInt(ll[1]), in);
-                    formulas.add(psi);
-                    continue;
-                }
-
-                /* parse an ExEy formula */
-                if (ll[0].equals("exey")) {
-                    Formula psi = new ExEyFormula(structure);
-                    readClauses(psi, Integer.parseInt(ll[1]), in);
-                    formulas.add(psi);
-                    continue;
-                }
-
-                /* parse an ExAy formula */
-                if (ll[0].equals("exay")) {
-                    Formula psi = new ExAyFormula(structure);
-                    readClauses(psi, Integer.parseInt(ll[1]), in);
-                    formulas.add(psi);
-                    continue;
-                }
-
-                /* parse an Ax formula */
-                if (ll[0].equals("ax")) {
-                    Formula psi = new AxFormula(structure);
-                    readClauses(psi, Integer.parseInt(ll[1]), in);
-                    formulas.add(psi);
-                    continue;
-                }
-
-                /* parse an Ex formula */
-                if (ll[0].equals("ex")) {
-                    Formula psi = new ExFormula(structure);
-                    readClauses(psi, Integer.parseInt(ll[1]), in);
-                    formulas.add(psi);
-                }
+                /* quantifiers and formulas */
+                if (formulaReader == null) formulaReader = new FormulaReader(structure);
+                formulaReader.parse(ll, in::readLine);
             }
             in.close();
+            if (formulaReader != null) {
+                this.quantifiers = formulaReader.getQuantifiers();
+                this.formulas = formulaReader.getFormulas();
+            }
+            if (structureReader != null) {
+                System.out.printf("parsed %d tuples in %d ms (%.0f tuples/s)%n", structureReader.getTuples(), structureReader.getTime(), structureReader.getThroughput());
+            }
         } catch (IOException e) {
             System.err.println("Error while reading the input.");
             e.printStackTrace();
@@ -166,40 +255,138 @@ public class Main {
         }
     }
 
-    /** Read clauses from stdin. */
-    private void readClauses(Formula psi, int m, BufferedReader in) throws IOException {
-        String line;
-        for (int i = 0; i < m; i++) {
-            line = in.readLine();
-            if (line.charAt(0) == 'c' && line.charAt(1) == ' ') { i--; continue; }
-            psi.addClause(line);
+    /**
+     * Read the query file of the batch mode. It consists of blocks of quantifiers and formulas, each of which starts with
+     * a line >query <name><.
+     * @return The queries in order of appearance.
+     */
+    private List<Query> parseQueries() {
+        List<Query> queries = new ArrayList<>();
+        try (ByteTokenizer in = ByteTokenizer.fromFile(Paths.get(batchFile))) {
+            Query query = null;
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                String[] ll = line.split(" ");
+                if (ll[0].equals("c") || ll[0].isEmpty()) continue;
+                if (ll[0].equals("query")) {
+                    query = new Query(ll.length > 1 ? ll[1] : Integer.toString(queries.size()+1), new FormulaReader(structure));
+                    queries.add(query);
+                    continue;
+                }
+                if (query == null) throw new IOException("The first declaration in " + batchFile + " has to be a query.");
+                if (!query.formula.parse(ll, in::readLine)) throw new IOException("Unknown declaration in " + batchFile + ": " + line);
+            }
+        } catch (IOException e) {
+            System.err.println("Error while reading the queries.");
+            e.printStackTrace();
+            System.exit(1);
         }
+        return queries;
     }
 
-    private void solve() {
-        System.out.println("|V| = " + structure.getGraph().getNumVertices() + ", |E| = " + structure.getGraph().getNumberOfEdges() + ", cc(G) = " + structure.getGraph().getConnectedComponents().size());
-
-        // compute the tree decomposition
+    /**
+     * Compute the tree decomposition, or load and validate a given one.
+     * @return A tree decomposition of the graph of the structure.
+     */
+    private TreeDecomposition<Integer> decompose() {
         TreeDecomposition<Integer> td = null;
         try {
-            td = new SmartDecomposer<>(structure.getGraph()).call();
+            if (decompositionFile != null) {
+                td = PaceReader.readDecomposition(Paths.get(decompositionFile), structure.getGraph());
+            } else {
+                td = new SmartDecomposer<>(structure.getGraph()).call();
+            }
         } catch (Exception e) {
-            System.err.println("Failed to compute tree decomposition.");
+            System.err.println("Failed to obtain a tree decomposition.");
             e.printStackTrace();
             System.exit(1);
         }
+        return td;
+    }
+
+    private void solve() {
+        System.out.println("|V| = " + structure.getGraph().getNumVertices() + ", |E| = " + structure.getGraph().getNumberOfEdges() + ", cc(G) = " + structure.getGraph().getConnectedComponents().size());
+
+        long start = System.nanoTime();
+        TreeDecomposition<Integer> td = decompose();
         System.out.println("tw(G) = " + td.getWidth());
+        ModelChecker checker = new ModelChecker(structure, td);
+        checker.setOffHeap(offHeap);
+        checker.setInterning(intern);
+        checker.setPool(threads > 1 ? new ForkJoinPool(threads) : null);
+        checker.setSubtreeThreshold(subtreeThreshold);
+        checker.setBranchAndBound(branchAndBound);
+        checker.setSpillBudget(spillBudget);
+        System.out.println("state storage: " + checker.getStorage());
+
+        if (batchFile != null) {
+            System.out.printf("decomposition computed in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+            solveBatch(checker);
+            return;
+        }
 
-        MSOStateVectorFactory factory = new MSOStateVectorFactory(quantifiers, formulas);
-        DynamicProgrammingOnTreeDecomposition<Integer> solver = new DynamicProgrammingOnTreeDecomposition<>(structure.getGraph(), factory, true, td);
-        MSOStateVector solution = (MSOStateVector) solver.run();
-        MSOStateVector.MSOState state = solution.getSatisfyingState();
+        ModelChecker.Outcome outcome = checker.solve(quantifiers, formulas);
+        MSOStateVector.MSOState state = outcome.getState();
         if (state == null) {
             System.out.println("Not a model!");
         } else {
             System.out.println("Found a solution of value: " + state.value + ".");
             System.out.println(state.assignment);
         }
+        if (outcome.getUpperBound() < Integer.MAX_VALUE) System.out.println("upper bound: " + outcome.getUpperBound());
+        System.out.println("peak live states: " + outcome.getPeakStates());
+    }
+
+    /**
+     * Start the server. A structure given on the command line (as binary, .gr, or input file) is registered as >default<,
+     * without input file stdin is not read.
+     */
+    private void serve() {
+        ModelCheckingServer server = new ModelCheckingServer(maxChecks, timeout, offHeap, intern, threads, subtreeThreshold, branchAndBound, spillBudget);
+        if (inputFile != null) parseInput();
+        if (structure != null) server.register("default", structure, decompose());
+        try {
+            server.serve(serverAddress);
+        } catch (IOException e) {
+            System.err.println("Error while running the server.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /** Run every query of the query file against the structure and its (single) tree decomposition. */
+    private void solveBatch(ModelChecker checker) {
+        List<Query> queries = parseQueries();
+        if (!quantifiers.isEmpty() || !formulas.isEmpty()) {
+            FormulaReader input = new FormulaReader(structure);
+            input.getQuantifiers().addAll(quantifiers);
+            input.getFormulas().addAll(formulas);
+            queries.add(0, new Query("input", input));
+        }
+        long total = System.nanoTime();
+        for (Query query : queries) {
+            long start = System.nanoTime();
+            MSOStateVector.MSOState state = checker.check(query.formula.getQuantifiers(), query.formula.getFormulas());
+            long time = (System.nanoTime() - start) / 1_000_000;
+            if (state == null) {
+                System.out.printf("[%s] Not a model! (%d ms)%n", query.name, time);
+            } else {
+                System.out.printf("[%s] Found a solution of value: %d. (%d ms)%n", query.name, state.value, time);
+                System.out.println(state.assignment);
+            }
+        }
+        System.out.printf("checked %d queries in %d ms%n", queries.size(), (System.nanoTime() - total) / 1_000_000);
+    }
+
+    /** A named formula of the batch mode. */
+    private static class Query {
+        final String name;
+        final FormulaReader formula;
+
+        Query(String name, FormulaReader formula) {
+            this.name = name;
+            this.formula = formula;
+        }
     }
 
-}
\ No newline at end of file
+}
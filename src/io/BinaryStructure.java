@@ -0,0 +1,154 @@
+package io;
+
+import logic.Structure;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A compact binary representation of a logical structure that can be loaded without parsing every tuple. The file
+ * has the following layout (all numbers in big-endian order):
+ *
+ * <pre>
+ * int magic, int version, int universeSize, int numberOfRelations
+ * for each relation:
+ *     short nameLength, byte[] name, int arity, byte encoding, int count, data
+ * </pre>
+ *
+ * The edge relation E is stored as sorted array of count edges (2 * count ints with e_0 < e_1), unary relations as
+ * bit array of count longs, and all other relations as lexicographically sorted array of count tuples (count * arity ints).
+ */
+public class BinaryStructure {
+
+    /** The bytes >JMSB< identify a binary structure. */
+    private static final int MAGIC = 0x4a4d5342;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Encodings of relations. */
+    private static final byte EDGES = 0;
+    private static final byte BITS = 1;
+    private static final byte TUPLES = 2;
+
+    /**
+     * Writes the given structure in binary format to the given file.
+     * @param structure The structure to store.
+     * @param path The target file.
+     * @throws IOException If the file can not be written.
+     */
+    public static void write(Structure structure, Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            List<String> vocabulary = structure.getVocabulary();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(structure.getUniverseSize());
+            out.writeInt(vocabulary.size());
+            for (String R : vocabulary) {
+                byte[] name = R.getBytes(StandardCharsets.UTF_8);
+                int arity = structure.getArity(R);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeInt(arity);
+                if (R.equals("E")) {
+                    out.writeByte(EDGES);
+                    writeTuples(structure, R, out);
+                } else if (arity == 1) {
+                    out.writeByte(BITS);
+                    BitSet elements = new BitSet(structure.getUniverseSize());
+                    structure.forEachTuple(R, tuple -> elements.set(tuple[0]));
+                    long[] words = elements.toLongArray();
+                    out.writeInt(words.length);
+                    for (long word : words) out.writeLong(word);
+                } else {
+                    out.writeByte(TUPLES);
+                    writeTuples(structure, R, out);
+                }
+            }
+        }
+    }
+
+    /** Writes the number of tuples of R followed by the tuples. */
+    private static void writeTuples(Structure structure, String R, DataOutputStream out) throws IOException {
+        int[] count = new int[1];
+        structure.forEachTuple(R, tuple -> count[0]++);
+        out.writeInt(count[0]);
+        IOException[] error = new IOException[1];
+        structure.forEachTuple(R, tuple -> {
+            try {
+                for (int e : tuple) out.writeInt(e);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) throw error[0];
+    }
+
+    /**
+     * Loads a structure from the given binary file, which is memory-mapped for this purpose.
+     * @param path The file to load.
+     * @return The stored structure.
+     * @throws IOException If the file can not be read or is not a binary structure.
+     */
+    public static Structure read(Path path) throws IOException {
+        ByteBuffer in;
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+        if (in.getInt() != MAGIC) throw new IOException(path + " is not a binary structure.");
+        int version = in.getInt();
+        if (version != VERSION) throw new IOException("Unsupported version " + version + " of binary structure.");
+
+        // the vocabulary has to be known before the universe is initialized, so we read the relation headers first
+        int n = in.getInt();
+        int r = in.getInt();
+        Structure structure = new Structure();
+        String[] names = new String[r];
+        int[] arities = new int[r];
+        byte[] encodings = new byte[r];
+        int[] counts = new int[r];
+        int[] offsets = new int[r];
+        for (int i = 0; i < r; i++) {
+            byte[] name = new byte[in.getShort()];
+            in.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            arities[i] = in.getInt();
+            encodings[i] = in.get();
+            counts[i] = in.getInt();
+            offsets[i] = in.position();
+            int width = encodings[i] == BITS ? Long.BYTES : arities[i] * Integer.BYTES;
+            in.position(in.position() + counts[i] * width);
+            structure.addRelation(names[i], arities[i]);
+        }
+        structure.initializeUniverse(n);
+
+        // fill the relations directly from the mapped data
+        for (int i = 0; i < r; i++) {
+            in.position(offsets[i]);
+            if (encodings[i] == BITS) {
+                ByteBuffer words = in.slice();
+                words.limit(counts[i] * Long.BYTES);
+                structure.setUnaryRelation(names[i], BitSet.valueOf(words.asLongBuffer()));
+            } else {
+                IntBuffer tuples = in.asIntBuffer();
+                int[] tuple = new int[arities[i]];
+                for (int j = 0; j < counts[i]; j++) {
+                    tuples.get(tuple);
+                    structure.setInRelation(names[i], tuple);
+                }
+            }
+        }
+        return structure;
+    }
+
+}
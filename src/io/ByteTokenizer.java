@@ -0,0 +1,315 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A line based tokenizer that works directly on the bytes of the input. Integers are parsed without creating a String
+ * for each token, which is the dominating cost when reading structures with millions of tuples.
+ *
+ * The input is either a memory-mapped file (in which case the whole input is available in one buffer and can be split
+ * into chunks, @see #slice), or a stream that is read through a large buffer.
+ *
+ * Usage: call @see #nextLine to buffer the next line, then read tokens from it, and call @see #nextLine again.
+ */
+public class ByteTokenizer implements Closeable {
+
+    /** Initial size of the buffer used for streams. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** The channel we read from, or null if the whole input is already in the buffer. */
+    private final ReadableByteChannel channel;
+
+    /** The buffer from which we read, position points to the next unread byte. */
+    private ByteBuffer buffer;
+
+    /** Index of the first byte behind the current line (the '\n' or the limit of the buffer). */
+    private int lineEnd;
+
+    /** Index in the buffer at which the current line starts. */
+    private int lineStart;
+
+    /** True if the channel is exhausted. */
+    private boolean eof;
+
+    private ByteTokenizer(ReadableByteChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.eof = channel == null;
+        this.lineStart = buffer.position();
+        this.lineEnd = -1;
+    }
+
+    /**
+     * Creates a tokenizer for the given file, which will be memory-mapped if possible.
+     * @param path The file to read.
+     * @return A tokenizer over the file.
+     * @throws IOException If the file can not be opened.
+     */
+    public static ByteTokenizer fromFile(Path path) throws IOException {
+        FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+        if (fc.size() > Integer.MAX_VALUE) return new ByteTokenizer(fc, emptyBuffer());
+        ByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        fc.close();
+        return new ByteTokenizer(null, mapped);
+    }
+
+    /**
+     * Creates a tokenizer for the given stream that reads through a large buffer.
+     * @param in The stream to read, usually stdin.
+     * @return A tokenizer over the stream.
+     */
+    public static ByteTokenizer fromStream(InputStream in) {
+        return new ByteTokenizer(Channels.newChannel(in), emptyBuffer());
+    }
+
+    /** Creates an empty buffer in read mode. */
+    private static ByteBuffer emptyBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Indicates whether the whole input is stored in the buffer, which is required for @see #slice.
+     * @return True, if the tokenizer does not read from a stream.
+     */
+    public boolean isRandomAccess() {
+        return channel == null;
+    }
+
+    /**
+     * Reads more data from the channel into the buffer. The current line (from lineStart on) is kept.
+     * @return False, if no further data is available.
+     */
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        int offset = buffer.position() - lineStart;
+        buffer.position(lineStart);
+        if (buffer.remaining() == buffer.capacity()) {
+            // the current line does not fit into the buffer -> grow it
+            ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        int read = 0;
+        while (read == 0) read = channel.read(buffer);
+        buffer.flip();
+        lineStart = 0;
+        buffer.position(offset);
+        if (read < 0) eof = true;
+        return read > 0;
+    }
+
+    /**
+     * Moves to the next line of the input and ensures that it is completely buffered.
+     * @return False, if the end of the input was reached.
+     * @throws IOException If the input can not be read.
+     */
+    public boolean nextLine() throws IOException {
+        if (lineEnd >= 0) buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+        lineStart = buffer.position();
+        if (!buffer.hasRemaining() && !fill()) {
+            lineEnd = -1;
+            return false;
+        }
+        int i = buffer.position();
+        while (true) {
+            int limit = buffer.limit();
+            while (i < limit && buffer.get(i) != '\n') i++;
+            if (i < limit) break;
+            int scanned = i - lineStart;
+            if (!fill()) { i = buffer.limit(); break; }
+            i = lineStart + scanned;
+        }
+        lineEnd = i;
+        return true;
+    }
+
+    /** Skip blanks (and the carriage return of Windows line endings) in the current line. */
+    private void skipBlanks() {
+        int i = buffer.position();
+        while (i < lineEnd) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            i++;
+        }
+        buffer.position(i);
+    }
+
+    /**
+     * Checks if the current line contains further tokens.
+     * @return True, if there is no further token in the line.
+     */
+    public boolean isEndOfLine() {
+        skipBlanks();
+        return buffer.position() >= lineEnd;
+    }
+
+    /**
+     * Checks whether the next token of the current line is exactly the given character (for instance the 'c' of a
+     * comment line). The token is not consumed.
+     * @param c The character to test.
+     * @return True, if the next token consists of c only.
+     */
+    public boolean nextTokenIs(char c) {
+        skipBlanks();
+        int i = buffer.position();
+        if (i >= lineEnd || buffer.get(i) != c) return false;
+        if (i + 1 >= lineEnd) return true;
+        byte b = buffer.get(i+1);
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Parses the next integer of the current line.
+     * @return The parsed integer.
+     */
+    public int nextInt() {
+        skipBlanks();
+        int i = buffer.position();
+        boolean negative = false;
+        if (i < lineEnd && buffer.get(i) == '-') { negative = true; i++; }
+        int start = i;
+        long value = 0;
+        long max = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        while (i < lineEnd) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) break;
+            value = value * 10 + digit;
+            if (value > max) throw new NumberFormatException("Integer out of range in line: " + currentLine());
+            i++;
+        }
+        if (i == start || (i < lineEnd && !isBlank(buffer.get(i)))) {
+            throw new NumberFormatException("Expected an integer in line: " + currentLine());
+        }
+        buffer.position(i);
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Reads the next token of the current line and returns the index of the given name it matches, without creating
+     * a String for it.
+     * @param names Candidates as ASCII bytes.
+     * @return The index of the token in names, or -1 if the token is not among them.
+     */
+    public int nextToken(byte[][] names) {
+        skipBlanks();
+        int start = buffer.position();
+        int i = start;
+        while (i < lineEnd && !isBlank(buffer.get(i))) i++;
+        buffer.position(i);
+        int length = i - start;
+        candidates: for (int k = 0; k < names.length; k++) {
+            if (names[k].length != length) continue;
+            for (int j = 0; j < length; j++) {
+                if (names[k][j] != buffer.get(start + j)) continue candidates;
+            }
+            return k;
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the next token of the current line.
+     */
+    public void skipToken() {
+        skipBlanks();
+        int i = buffer.position();
+        while (i < lineEnd && !isBlank(buffer.get(i))) i++;
+        buffer.position(i);
+    }
+
+    /**
+     * Returns the remainder of the current line as String.
+     * @return The rest of the line without line break.
+     */
+    public String restOfLine() {
+        int end = lineEnd;
+        if (end > buffer.position() && buffer.get(end-1) == '\r') end--;
+        byte[] bytes = new byte[Math.max(0, end - buffer.position())];
+        for (int j = 0; j < bytes.length; j++) bytes[j] = buffer.get(buffer.position() + j);
+        buffer.position(lineEnd);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next line as String (similar to BufferedReader.readLine()).
+     * @return The next line, or null if the input is exhausted.
+     * @throws IOException If the input can not be read.
+     */
+    public String readLine() throws IOException {
+        if (!nextLine()) return null;
+        return restOfLine();
+    }
+
+    /** The current line, used in error messages. */
+    private String currentLine() {
+        int position = buffer.position();
+        buffer.position(lineStart);
+        String line = restOfLine();
+        buffer.position(position);
+        return line;
+    }
+
+    /**
+     * The offset of the current line in the input. Only meaningful for random access tokenizer.
+     * @return The index of the first byte of the current line.
+     */
+    public int lineOffset() {
+        return lineStart;
+    }
+
+    /**
+     * The offset directly behind the current line (including its line break).
+     * @return The index of the first byte of the next line.
+     */
+    public int nextLineOffset() {
+        return Math.min(lineEnd + 1, buffer.limit());
+    }
+
+    /**
+     * Moves the tokenizer to the given offset, the next call of @see #nextLine will read the line starting there.
+     * Only supported for random access tokenizer.
+     * @param offset The offset of a line start.
+     */
+    public void seek(int offset) {
+        if (!isRandomAccess()) throw new UnsupportedOperationException("Can not seek in a stream.");
+        buffer.position(offset);
+        lineStart = offset;
+        lineEnd = -1;
+    }
+
+    /**
+     * Creates an independent tokenizer for the bytes [from, to) of the input. Only supported for random access tokenizer.
+     * @param from First byte of the slice (should be a line start).
+     * @param to First byte behind the slice (should be a line start).
+     * @return A tokenizer that can be used concurrently to this one.
+     */
+    public ByteTokenizer slice(int from, int to) {
+        if (!isRandomAccess()) throw new UnsupportedOperationException("Can not slice a stream.");
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        return new ByteTokenizer(null, view);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+}
@@ -0,0 +1,159 @@
+package io;
+
+import logic.Structure;
+import logic.formulas.*;
+import logic.quantifiers.*;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Parses the quantifiers and formulas of a .mso file (everything behind the structure). The lines are provided by the
+ * caller, such that the same syntax can be read from files, query files, and sockets.
+ */
+public class FormulaReader {
+
+    /** A source of lines, for instance BufferedReader::readLine. */
+    public interface LineSource {
+        String readLine() throws IOException;
+    }
+
+    /** The structure over which the formulas are evaluated. */
+    private Structure structure;
+
+    /** All quantifiers read so far. */
+    private List<Quantifier> quantifiers;
+
+    /** All sub-formulas read so far. */
+    private List<Formula> formulas;
+
+    public FormulaReader(Structure structure) {
+        this.structure = structure;
+        this.quantifiers = new LinkedList<>();
+        this.formulas = new LinkedList<>();
+    }
+
+    /**
+     * Parse a declaration of a quantifier or formula. Clauses of a formula are read from the given source.
+     * @param ll The tokens of the declaration line.
+     * @param in The source from which the following lines can be read.
+     * @return True, if the line was a quantifier or formula declaration.
+     * @throws IOException If clauses could not be read.
+     */
+    public boolean parse(String[] ll, LineSource in) throws IOException {
+
+        /* parse and minimization quantifier */
+        if (ll[0].equals("min")) {
+            Quantifier Q = new OptimizationQuantifier(ll);
+            quantifiers.add(Q);
+            return true;
+        }
+
+        /* parse a partition quantifier */
+        if (ll[0].equals("exists")) {
+            Quantifier Q = new PartitionQuantifier(ll);
+            quantifiers.add(Q);
+            return true;
+        }
+
+        /* parse a connected quantifier */
+        if (ll[0].equals("connected")) {
+            Quantifier Q = new ConnectedQuantifier(ll);
+            quantifiers.add(Q);
+            return true;
+        }
+
+        /* parse a forest quantifier */
+        if (ll[0].equals("forest")) {
+            Quantifier Q = new ForestQuantifier(ll);
+            quantifiers.add(Q);
+            return true;
+        }
+
+        /* parse an AxAy formula */
+        if (ll[0].equals("axay")) {
+            Formula psi = new AxAyFormula(structure);
+            readClauses(psi, Integer.parseInt(ll[1]), in);
+            formulas.add(psi);
+            return true;
+        }
+
+        /* parse an AxEy formula */
+        if (ll[0].equals("axey")) {
+            Formula psi = new AxEyFormula(structure);
+            readClauses(psi, Integer.parseInt(ll[1]), in);
+            formulas.add(psi);
+            return true;
+        }
+
+        /* parse an ExEy formula */
+        if (ll[0].equals("exey")) {
+            Formula psi = new ExEyFormula(structure);
+            readClauses(psi, Integer.parseInt(ll[1]), in);
+            formulas.add(psi);
+            return true;
+        }
+
+        /* parse an ExAy formula */
+        if (ll[0].equals("exay")) {
+            Formula psi = new ExAyFormula(structure);
+            readClauses(psi, Integer.parseInt(ll[1]), in);
+            formulas.add(psi);
+            return true;
+        }
+
+        /* parse an Ax formula */
+        if (ll[0].equals("ax")) {
+            Formula psi = new AxFormula(structure);
+            readClauses(psi, Integer.parseInt(ll[1]), in);
+            formulas.add(psi);
+            return true;
+        }
+
+        /* parse an Ex formula */
+        if (ll[0].equals("ex")) {
+            Formula psi = new ExFormula(structure);
+            readClauses(psi, Integer.parseInt(ll[1]), in);
+            formulas.add(psi);
+            return true;
+        }
+
+        return false;
+    }
+
+    /** Read m clauses from the source, comment lines are skipped. */
+    private void readClauses(Formula psi, int m, LineSource in) throws IOException {
+        String line;
+        for (int i = 0; i < m; i++) {
+            line = in.readLine();
+            if (line == null) throw new IOException("Unexpected end of input, expected " + (m-i) + " more clauses.");
+            if (line.charAt(0) == 'c' && line.charAt(1) == ' ') { i--; continue; }
+            psi.addClause(line);
+        }
+    }
+
+    /**
+     * All quantifiers that were parsed so far, in order of appearance.
+     * @return The quantifiers.
+     */
+    public List<Quantifier> getQuantifiers() {
+        return quantifiers;
+    }
+
+    /**
+     * All formulas that were parsed so far, in order of appearance.
+     * @return The formulas.
+     */
+    public List<Formula> getFormulas() {
+        return formulas;
+    }
+
+    /**
+     * Checks if neither a quantifier nor a formula was parsed.
+     * @return True, if nothing was parsed.
+     */
+    public boolean isEmpty() {
+        return quantifiers.isEmpty() && formulas.isEmpty();
+    }
+}
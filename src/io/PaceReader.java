@@ -0,0 +1,137 @@
+package io;
+
+import jdrasil.graph.Bag;
+import jdrasil.graph.Graph;
+import jdrasil.graph.TreeDecomposition;
+import logic.Structure;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reader for the graph (.gr) and tree decomposition (.td) formats of the PACE challenge. Vertices in these formats are
+ * numbered 1,...,n and are mapped to the elements 0,...,n-1 of the universe.
+ */
+public class PaceReader {
+
+    /**
+     * Reads a .gr file into a structure whose vocabulary only consists of E.
+     * @param path The .gr file.
+     * @return A structure over {0,...,n-1} with the edges of the graph.
+     * @throws IOException If the file can not be read or is malformed.
+     */
+    public static Structure readGraph(Path path) throws IOException {
+        try (ByteTokenizer in = ByteTokenizer.fromFile(path)) {
+            Structure structure = null;
+            int[] edge = new int[2];
+            int m = -1;
+            while (in.nextLine()) {
+                if (in.isEndOfLine() || in.nextTokenIs('c')) continue;
+                if (in.nextTokenIs('p')) {
+                    String[] header = in.restOfLine().trim().split("\\s+");
+                    if (header.length != 4 || !header[1].equals("tw")) throw new IOException("Malformed .gr header in " + path + ".");
+                    structure = new Structure();
+                    structure.addRelation("E", 2);
+                    structure.initializeUniverse(Integer.parseInt(header[2]));
+                    m = Integer.parseInt(header[3]);
+                    continue;
+                }
+                if (structure == null) throw new IOException("Missing .gr header in " + path + ".");
+                edge[0] = in.nextInt() - 1;
+                edge[1] = in.nextInt() - 1;
+                int n = structure.getUniverseSize();
+                if (edge[0] < 0 || edge[0] >= n || edge[1] < 0 || edge[1] >= n) {
+                    throw new IOException("Edge " + (edge[0]+1) + " " + (edge[1]+1) + " in " + path + " has a vertex outside of 1,...," + n + ".");
+                }
+                structure.setInRelation("E", edge);
+                m--;
+            }
+            if (structure == null) throw new IOException("Missing .gr header in " + path + ".");
+            if (m != 0) throw new IOException("Number of edges in " + path + " does not match its header.");
+            return structure;
+        }
+    }
+
+    /**
+     * Reads a .td file and checks that it is a valid tree decomposition of the given graph.
+     * @param path The .td file.
+     * @param graph The graph that is decomposed, its vertices are 0,...,n-1.
+     * @return The tree decomposition.
+     * @throws IOException If the file can not be read, is malformed, or is not a valid tree decomposition of graph.
+     */
+    public static TreeDecomposition<Integer> readDecomposition(Path path, Graph<Integer> graph) throws IOException {
+        try (ByteTokenizer in = ByteTokenizer.fromFile(path)) {
+            TreeDecomposition<Integer> td = new TreeDecomposition<>(graph);
+            Bag<Integer>[] bags = null;
+            int[] parent = null; // union-find over the bags, such that the tree edges can not close a cycle
+            int edges = 0;
+            while (in.nextLine()) {
+                if (in.isEndOfLine() || in.nextTokenIs('c')) continue;
+
+                // header >s td #bags width+1 n<
+                if (in.nextTokenIs('s')) {
+                    String[] header = in.restOfLine().trim().split("\\s+");
+                    if (header.length != 5 || !header[1].equals("td")) throw new IOException("Malformed .td header in " + path + ".");
+                    if (Integer.parseInt(header[4]) != graph.getNumVertices()) {
+                        throw new IOException("The decomposition in " + path + " is for a graph with " + header[4] + " vertices, but the graph has " + graph.getNumVertices() + ".");
+                    }
+                    @SuppressWarnings({"rawtypes", "unchecked"})
+                    Bag<Integer>[] array = new Bag[Integer.parseInt(header[2])];
+                    bags = array;
+                    parent = new int[bags.length];
+                    for (int b = 0; b < parent.length; b++) parent[b] = b;
+                    continue;
+                }
+                if (bags == null) throw new IOException("Missing .td header in " + path + ".");
+
+                // a bag >b i v_1 ... v_k<
+                if (in.nextTokenIs('b')) {
+                    in.skipToken();
+                    int id = in.nextInt();
+                    Set<Integer> vertices = new HashSet<>();
+                    while (!in.isEndOfLine()) {
+                        int v = in.nextInt() - 1;
+                        if (!graph.containsNode(v)) throw new IOException("Bag " + id + " in " + path + " contains the unknown vertex " + (v+1) + ".");
+                        vertices.add(v);
+                    }
+                    if (id < 1 || id > bags.length || bags[id-1] != null) throw new IOException("Invalid bag id " + id + " in " + path + ".");
+                    bags[id-1] = td.createBag(vertices);
+                    continue;
+                }
+
+                // an edge of the tree >i j<
+                int i = in.nextInt();
+                int j = in.nextInt();
+                if (i < 1 || j < 1 || i > bags.length || j > bags.length || bags[i-1] == null || bags[j-1] == null) {
+                    throw new IOException("Tree edge " + i + " " + j + " in " + path + " refers to an unknown bag.");
+                }
+                int rootI = find(parent, i-1), rootJ = find(parent, j-1);
+                if (rootI == rootJ) throw new IOException("Tree edge " + i + " " + j + " in " + path + " closes a cycle or is given twice.");
+                parent[rootI] = rootJ;
+                td.addTreeEdge(bags[i-1], bags[j-1]);
+                edges++;
+            }
+            if (bags == null) throw new IOException("Missing .td header in " + path + ".");
+            for (int i = 0; i < bags.length; i++) {
+                if (bags[i] == null) throw new IOException("Bag " + (i+1) + " is missing in " + path + ".");
+            }
+            // without cycles, the edges form a tree if, and only if, there are #bags-1 of them
+            if (edges != bags.length - 1) throw new IOException("The tree edges in " + path + " do not connect all bags.");
+            if (!td.isValid()) throw new IOException(path + " is not a valid tree decomposition of the graph.");
+            return td;
+        }
+    }
+
+    /**
+     * Find the representative of a bag in a union-find forest, halving the paths on the way.
+     * @param parent The parent of every bag, roots are their own parent.
+     * @param b The bag.
+     * @return The root of the tree of b.
+     */
+    private static int find(int[] parent, int b) {
+        while (parent[b] != b) b = parent[b] = parent[parent[b]];
+        return b;
+    }
+}
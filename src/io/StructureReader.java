@@ -0,0 +1,194 @@
+package io;
+
+import logic.Structure;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the tuple block of a >structure n m< declaration, i.\,e., the m lines of the form >R e_1 e_2 ... e_k<, into a
+ * structure. Comment lines within the block are skipped and do not count towards m.
+ *
+ * If the input is memory-mapped, the block can be split into chunks of lines that are parsed by several threads. The
+ * parsed tuples are then inserted into the structure in input order.
+ */
+public class StructureReader {
+
+    /** Below this number of tuples we never use more than one thread. */
+    private static final int MIN_TUPLES_PER_THREAD = 1 << 16;
+
+    /** The structure we fill. */
+    private final Structure structure;
+
+    /** Names of the relations in the vocabulary, as bytes. */
+    private final byte[][] names;
+
+    /** Names of the relations in the vocabulary. */
+    private final String[] relations;
+
+    /** Arity of the relations in the vocabulary. */
+    private final int[] arity;
+
+    /** Number of threads that may be used to parse the block. */
+    private final int threads;
+
+    /** Number of tuples read so far. */
+    private long tuples;
+
+    /** Time spent on parsing in nanoseconds. */
+    private long time;
+
+    /**
+     * Create a reader for the given structure, the vocabulary of the structure has to be fixed already.
+     * @param structure The structure to fill.
+     * @param threads Number of threads that may be used for memory-mapped input.
+     */
+    public StructureReader(Structure structure, int threads) {
+        this.structure = structure;
+        this.threads = Math.max(1, threads);
+        List<String> vocabulary = structure.getVocabulary();
+        this.relations = vocabulary.toArray(new String[0]);
+        this.names = new byte[relations.length][];
+        this.arity = new int[relations.length];
+        for (int i = 0; i < relations.length; i++) {
+            this.names[i] = relations[i].getBytes(StandardCharsets.UTF_8);
+            this.arity[i] = structure.getArity(relations[i]);
+        }
+    }
+
+    /**
+     * Read m tuples from the given tokenizer, which is positioned on the line in front of the block.
+     * @param in The tokenizer to read from.
+     * @param m The number of tuples.
+     * @throws IOException If the input could not be read or is malformed.
+     */
+    public void read(ByteTokenizer in, int m) throws IOException {
+        long start = System.nanoTime();
+        int chunks = Math.min(threads, m / MIN_TUPLES_PER_THREAD);
+        if (chunks > 1 && in.isRandomAccess()) {
+            readParallel(in, m, chunks);
+        } else {
+            readSequential(in, m);
+        }
+        this.tuples += m;
+        this.time += System.nanoTime() - start;
+    }
+
+    /** Parse the block line by line and insert each tuple directly. */
+    private void readSequential(ByteTokenizer in, int m) throws IOException {
+        int[][] buffers = tupleBuffers();
+        for (int j = 0; j < m; j++) {
+            if (!in.nextLine()) throw new IOException("Unexpected end of input, expected " + (m-j) + " more tuples.");
+            if (in.isEndOfLine() || in.nextTokenIs('c')) { j--; continue; }
+            int R = relation(in);
+            int[] elements = buffers[R];
+            for (int k = 0; k < elements.length; k++) elements[k] = in.nextInt();
+            structure.setInRelation(relations[R], elements);
+        }
+    }
+
+    /**
+     * Find the line boundaries of the block, parse chunks of it concurrently into flat integer arrays, and insert the
+     * result in input order.
+     */
+    private void readParallel(ByteTokenizer in, int m, int chunks) throws IOException {
+        // first pass: only locate the lines of the block, which is much cheaper than parsing them
+        int[] bounds = new int[chunks+1];
+        int perChunk = (m + chunks - 1) / chunks;
+        int chunk = 0;
+        for (int j = 0; j < m; j++) {
+            if (!in.nextLine()) throw new IOException("Unexpected end of input, expected " + (m-j) + " more tuples.");
+            if (in.isEndOfLine() || in.nextTokenIs('c')) { j--; continue; }
+            if (j % perChunk == 0) bounds[chunk++] = in.lineOffset();
+        }
+        bounds[chunk] = in.nextLineOffset();
+        int end = in.nextLineOffset();
+
+        // second pass: parse the chunks concurrently
+        ExecutorService pool = Executors.newFixedThreadPool(chunk);
+        try {
+            List<Future<int[]>> parts = new ArrayList<>(chunk);
+            for (int c = 0; c < chunk; c++) {
+                ByteTokenizer part = in.slice(bounds[c], bounds[c+1]);
+                parts.add(pool.submit(() -> parseChunk(part)));
+            }
+            int[][] buffers = tupleBuffers();
+            for (Future<int[]> part : parts) {
+                int[] data = part.get();
+                for (int i = 0; i < data.length; ) {
+                    int R = data[i++];
+                    int[] elements = buffers[R];
+                    for (int k = 0; k < elements.length; k++) elements[k] = data[i++];
+                    structure.setInRelation(relations[R], elements);
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("Failed to parse the structure.", e.getCause() != null ? e.getCause() : e);
+        } finally {
+            pool.shutdown();
+        }
+        in.seek(end);
+    }
+
+    /**
+     * Parse all tuples of a chunk into a flat array of the form >R e_1 ... e_k R' e'_1 ...<.
+     * @param in A tokenizer that is restricted to the chunk.
+     * @return The parsed tuples.
+     */
+    private int[] parseChunk(ByteTokenizer in) throws IOException {
+        int[] data = new int[1024];
+        int size = 0;
+        while (in.nextLine()) {
+            if (in.isEndOfLine() || in.nextTokenIs('c')) continue;
+            int R = relation(in);
+            if (size + arity[R] + 1 > data.length) data = Arrays.copyOf(data, 2 * data.length + arity[R] + 1);
+            data[size++] = R;
+            for (int k = 0; k < arity[R]; k++) data[size++] = in.nextInt();
+        }
+        return Arrays.copyOf(data, size);
+    }
+
+    /** Read the relation symbol of the current line. */
+    private int relation(ByteTokenizer in) throws IOException {
+        int R = in.nextToken(names);
+        if (R < 0) throw new IOException("Unknown relation in line: " + in.restOfLine());
+        return R;
+    }
+
+    /** One reusable tuple array per relation. */
+    private int[][] tupleBuffers() {
+        int[][] buffers = new int[relations.length][];
+        for (int R = 0; R < relations.length; R++) buffers[R] = new int[arity[R]];
+        return buffers;
+    }
+
+    /**
+     * Number of tuples read so far.
+     * @return The number of tuples.
+     */
+    public long getTuples() {
+        return tuples;
+    }
+
+    /**
+     * The parse throughput achieved so far.
+     * @return Tuples per second.
+     */
+    public double getThroughput() {
+        return time == 0 ? 0 : tuples / (time / 1e9);
+    }
+
+    /**
+     * Time spent on parsing so far.
+     * @return The time in milliseconds.
+     */
+    public long getTime() {
+        return time / 1_000_000;
+    }
+}
@@ -0,0 +1,203 @@
+package logic;
+
+import solver.MSOStateVector;
+
+/**
+ * Base class of logical objects that manages the position of their slots within the state and provides access to them.
+ * A state is an array of 64-bit words. Every logical object owns a range of whole words, in which its slots are packed
+ * with a fixed number of bits per slot (a power of two, such that no slot crosses a word boundary). Objects with several
+ * words own a component of the state instead, i.\,e., a word array of their own that is shared between equal states.
+ */
+public abstract class AbstractLogicalObject implements LogicalObject {
+
+    /** Index of the first word of this object in the state, or index of its component. */
+    protected int offset;
+
+    /** True, if the words of this object are stored in a component. */
+    private boolean interned;
+
+    /** Number of slots of this object. */
+    protected int length;
+
+    /** log_2 of the bits per slot. */
+    private int shift;
+
+    /** log_2 of the slots per word. */
+    private int slotsPerWordShift;
+
+    /** Mask of the bits of one slot. */
+    private long mask;
+
+    @Override
+    public void assignSlots(int offset, int length, int bits, boolean interned) {
+        this.offset = offset;
+        this.interned = interned;
+        this.length = length;
+        this.shift = Integer.numberOfTrailingZeros(bits);
+        this.slotsPerWordShift = 6 - shift;
+        this.mask = bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * By default, all states are compatible at a weak join, i.\,e., the weak key is empty.
+     * @return 0.
+     */
+    @Override
+    public int getWeakKeySize() {
+        return 0;
+    }
+
+    @Override
+    public void weakKey(MSOStateVector.MSOState state, long[] key, int from) {
+    }
+
+    /**
+     * By default, the slots are not ordered and states have to be equal to be compared.
+     * @return False.
+     */
+    @Override
+    public boolean isOrdered() {
+        return false;
+    }
+
+    @Override
+    public boolean dominates(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
+        int words = words(length, 1 << shift);
+        for (int w = 0; w < words; w++) {
+            if (getWord(stateA, w) != getWord(stateB, w)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * By default, an object is checked on the structure as a whole.
+     * @return False.
+     */
+    @Override
+    public boolean isComponentwise() {
+        return false;
+    }
+
+    /**
+     * The number of words needed to store the given slots.
+     * @param length The number of slots.
+     * @param bits The bits per slot (a power of two).
+     * @return The number of words.
+     */
+    public static int words(int length, int bits) {
+        int slotsPerWord = Long.SIZE / bits;
+        return (length + slotsPerWord - 1) / slotsPerWord;
+    }
+
+    /**
+     * The number of bits needed to store the values 0,...,values-1.
+     * @param values The number of different values.
+     * @return The number of bits (at least one).
+     */
+    protected static int bitsFor(int values) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(values - 1));
+    }
+
+    /**
+     * Read a slot of this object.
+     * @param state The state to read from.
+     * @param i The slot (relative to this object).
+     * @return The value of the slot.
+     */
+    protected int get(MSOStateVector.MSOState state, int i) {
+        int w = i >>> slotsPerWordShift;
+        long word = interned ? state.getComponentWord(offset, w) : state.getWord(offset + w);
+        return (int) ((word >>> ((i & ((1 << slotsPerWordShift) - 1)) << shift)) & mask);
+    }
+
+    /**
+     * Write a slot of this object.
+     * @param state The state to modify.
+     * @param i The slot (relative to this object).
+     * @param value The new value of the slot, it has to fit into the bits of a slot.
+     */
+    protected void set(MSOStateVector.MSOState state, int i, int value) {
+        int w = i >>> slotsPerWordShift;
+        int s = (i & ((1 << slotsPerWordShift) - 1)) << shift;
+        if (interned) {
+            long word = state.getComponentWord(offset, w);
+            state.setComponentWord(offset, w, (word & ~(mask << s)) | ((value & mask) << s));
+        } else {
+            long word = state.getWord(offset + w);
+            state.setWord(offset + w, (word & ~(mask << s)) | ((value & mask) << s));
+        }
+    }
+
+    /** Read the w-th word of this object. */
+    private long getWord(MSOStateVector.MSOState state, int w) {
+        return interned ? state.getComponentWord(offset, w) : state.getWord(offset + w);
+    }
+
+    /** Write the w-th word of this object. */
+    private void setWord(MSOStateVector.MSOState state, int w, long value) {
+        if (interned) {
+            state.setComponentWord(offset, w, value);
+        } else {
+            state.setWord(offset + w, value);
+        }
+    }
+
+    /**
+     * Copy all slots of this object.
+     * @param state The state to read from.
+     * @return A new array with the values of the slots.
+     */
+    protected int[] getSlots(MSOStateVector.MSOState state) {
+        int[] slots = new int[length];
+        for (int i = 0; i < length; i++) slots[i] = get(state, i);
+        return slots;
+    }
+
+    /**
+     * Overwrite all slots of this object.
+     * @param state The state to modify.
+     * @param slots The new values of the slots.
+     */
+    protected void setSlots(MSOStateVector.MSOState state, int[] slots) {
+        for (int i = 0; i < length; i++) set(state, i, slots[i]);
+    }
+
+    /**
+     * Set the slots of this object in the target to the bitwise or of the slots in a and b, i.\,e., to the logical or
+     * of 0/1 flags, computed word by word.
+     * @param target The state to modify.
+     * @param a The first state.
+     * @param b The second state.
+     */
+    protected void orSlots(MSOStateVector.MSOState target, MSOStateVector.MSOState a, MSOStateVector.MSOState b) {
+        int words = words(length, 1 << shift);
+        for (int w = 0; w < words; w++) setWord(target, w, getWord(a, w) | getWord(b, w));
+    }
+
+    /**
+     * Check whether the slots of a contain the ones of b, i.\,e., whether every 0/1 flag that is set in b is set in a
+     * as well, computed word by word.
+     * @param a The first state.
+     * @param b The second state.
+     * @return True, if the flags of a are a superset of the flags of b.
+     */
+    protected boolean containsSlots(MSOStateVector.MSOState a, MSOStateVector.MSOState b) {
+        int words = words(length, 1 << shift);
+        for (int w = 0; w < words; w++) {
+            if ((getWord(b, w) & ~getWord(a, w)) != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Set the slots of this object in the target to the bitwise and of the slots in a and b, i.\,e., to the logical and
+     * of 0/1 flags, computed word by word.
+     * @param target The state to modify.
+     * @param a The first state.
+     * @param b The second state.
+     */
+    protected void andSlots(MSOStateVector.MSOState target, MSOStateVector.MSOState a, MSOStateVector.MSOState b) {
+        int words = words(length, 1 << shift);
+        for (int w = 0; w < words; w++) setWord(target, w, getWord(a, w) & getWord(b, w));
+    }
+}
@@ -18,19 +18,46 @@ public interface LogicalObject {
     public boolean requiresWeakJoin();
 
     /**
-     * A weak hash-code may map non-equal object to the same hash value on purpose, as these objects may be "compatible" to join.
-     * @param state The state for wish the value shall be computed.
-     * @return The weak hash-code.
+     * The number of words of the weak key of this object, @see weakKey.
+     * @return The number of words (0 if all states are compatible or this object requires no weak join).
      */
-    public int weakHashCode(MSOStateVector.MSOState state);
+    public int getWeakKeySize();
 
     /**
-     * Tests weak-equality of two states, which in essence states that the states are "compatible" but not necessarily equal.
-     * @param stateA The first state.
-     * @param stateB The state to compare with.
-     * @return True, if the states are weak-equal.
+     * Write the weak key of a state, which states that the states are "compatible" but not necessarily equal: two states
+     * can be weak-joined if, and only if, their keys are equal. The key is written to @see getWeakKeySize words, which
+     * are zero when this method is called.
+     * @param state The state for which the key shall be computed.
+     * @param key Receives the key.
+     * @param from The index of the first word of the key.
      */
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB);
+    public void weakKey(MSOStateVector.MSOState state, long[] key, int from);
+
+    /**
+     * Indicates whether the slots of this object are partially ordered, @see dominates. States whose slots of unordered
+     * objects differ are never compared.
+     * @return True, if states can dominate each other with respect to this object.
+     */
+    public boolean isOrdered();
+
+    /**
+     * The partial order of the slots of this object: stateA dominates stateB if every way in which stateB can be extended
+     * to a model can be applied to stateA as well, and the order has to be kept by all operations on the states. A
+     * state that is dominated with respect to all ordered objects and has no smaller value is redundant and may be
+     * removed, @see MSOStateVector#reduce.
+     * @param stateA The dominating state.
+     * @param stateB The dominated state.
+     * @return True, if the slots of stateA are at least as good as the ones of stateB.
+     */
+    public boolean dominates(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB);
+
+    /**
+     * Indicates whether this object can be checked on every connected component of the structure on its own: it holds
+     * on the structure if, and only if, it holds on every component, and the values of the components add up. This is
+     * the case for objects that only relate adjacent elements, but not, for instance, for existential formulas.
+     * @return True, if the components of the structure may be solved independently, @see ModelChecker#check.
+     */
+    public boolean isComponentwise();
 
     /**
      * Getter for the number of integers (array-size) that has to be reserved for this logical object.
@@ -39,6 +66,25 @@ public interface LogicalObject {
      */
     public int getStateSize(int tw);
 
+    /**
+     * The number of bits a single slot of this object needs, i.\,e., all values stored in a slot are in
+     * 0,...,2^bits-1. States are bit-packed, so this should be as small as possible.
+     * @param tw The tree-width of the decomposition we work with (not bag size).
+     * @return The number of bits per slot (at most 32).
+     */
+    public int getBitsPerSlot(int tw);
+
+    /**
+     * Logical objects store their slots in 64-bit words, either inline in the word array of the state, or (if they
+     * need several words) in a component of their own that is shared by equal states. This method is called once the
+     * layout of the states is fixed, before the first state is created.
+     * @param offset Index of the first word of this object in the word array, or index of its component.
+     * @param length Number of slots of this object (as obtained from @see getStateSize).
+     * @param bits Bits per slot, the value of @see getBitsPerSlot rounded up to a power of two.
+     * @param interned True, if the slots are stored in a component.
+     */
+    public void assignSlots(int offset, int length, int bits, boolean interned);
+
     /**
      * Indicate whether or not this logical object needs interaction on introduce-bag.
      * @return True, if @see introduce shall be called.
@@ -46,13 +92,14 @@ public interface LogicalObject {
     public boolean requiresIntroduce();
 
     /**
-     * Introduce vertex $v$ with the given index to the state and return an (possible empty) array of new states.
+     * Introduce vertex $v$ with the given index to the state and push the (possibly zero) new states into the sink.
+     * The state may be modified and pushed itself, copies are only needed if several states are pushed.
      * @param state The state to which we insert.
      * @param v The vertex that is introduced.
      * @param index The tree-index of the vertex.
-     * @return An array of new states.
+     * @param sink Receives the new states.
      */
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index);
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink);
 
     /**
      * Indicates whether or not this logical object needs interaction on forget-bags.
@@ -61,13 +108,13 @@ public interface LogicalObject {
     public boolean requiresForget();
 
     /**
-     * Forget vertex $v$ with the given index from the state, this results in an (possible empty) array of new states.
+     * Forget vertex $v$ with the given index from the state and push the (possibly zero) new states into the sink.
      * @param state The state we work on.
      * @param v The vertex to be forgotten.
      * @param index The tree-index of the vertex.
-     * @return An array of new states.
+     * @param sink Receives the new states.
      */
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index);
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink);
 
     /**
      * Indicates whether or not this logical object requires interaction on edge-bags.
@@ -76,15 +123,16 @@ public interface LogicalObject {
     public boolean requiresEdge();
 
     /**
-     * Introduce the edge $\{v,w\}$ with the given indices to the given state, which results in an (possible empty) array of new states.
+     * Introduce the edge $\{v,w\}$ with the given indices to the given state and push the (possibly zero) new states into
+     * the sink.
      * @param state The state we work on.
      * @param v The first vertex of the edge.
      * @param w The second vertex of the edge.
      * @param indexV The tree-index of the first vertex.
      * @param indexW The tree-index of the second vertex.
-     * @return An array of new states.
+     * @param sink Receives the new states.
      */
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW);
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink);
 
     /**
      * Join two given states into the given new state. Returns true if this was successful, or false if the join is not valid
@@ -0,0 +1,18 @@
+package logic;
+
+import solver.MSOStateVector;
+
+/**
+ * Receives the states that a logical object produces in a transition (introduce, forget, or edge). The state vector
+ * chains the logical objects with sinks, such that every produced state is passed on directly to the next object, @see
+ * solver.MSOStateVector.
+ */
+@FunctionalInterface
+public interface StateSink {
+
+    /**
+     * Pass on a state. The state belongs to the sink afterwards, i.\,e., the caller must not modify it anymore.
+     * @param state The produced state.
+     */
+    void push(MSOStateVector.MSOState state);
+}
@@ -2,11 +2,18 @@ package logic;
 
 import jdrasil.graph.Graph;
 import jdrasil.graph.GraphFactory;
+import logic.relations.DenseRelation;
+import logic.relations.Relation;
+import logic.relations.Relations;
 
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * A logical structure that is guaranteed to contain a binary symmetric edge relation and which eventually contains other
@@ -20,12 +27,28 @@ public class Structure {
     /** Every structure we consider has to have an edge relation E. */
     private Graph<Integer> E;
 
-    /** Other relations then E are just stored as bitset. */
-    private Map<String, BitSet> relations;
+    /** Degree up to which the neighborhood is scanned linearly instead of by binary search. */
+    private static final int LINEAR_SCAN = 16;
+
+    /**
+     * Adjacency of E in compressed sparse row format, i.\,e., the neighbors of v are stored in ascending order at
+     * neighbors[offsets[v]],...,neighbors[offsets[v+1]-1]. Both are null as long as the structure is not frozen.
+     */
+    private int[] offsets;
+    private int[] neighbors;
+
+    /** Other relations then E, their representation depends on arity and size (@see Relations#create). */
+    private Map<String, Relation> relations;
+
+    /** The relations indexed by their position in the vocabulary (null at position 0, which is E). */
+    private Relation[] relationById;
 
     /** Arity of each relation present in the structure. */
     private Map<String, Integer> arity;
 
+    /** Names of all relations (including E) in the order in which they were declared. */
+    private List<String> vocabulary;
+
     /**
      * By initialization, there is an empty binary, symmetric relation E that encodes a graph.
      */
@@ -34,6 +57,9 @@ public class Structure {
         this.E = GraphFactory.emptyGraph();
         this.relations = new HashMap<>();
         this.arity = new HashMap<>();
+        this.vocabulary = new ArrayList<>();
+        this.vocabulary.add("E");
+        this.relationById = new Relation[1];
         this.universeSize = -1;
     }
 
@@ -44,6 +70,8 @@ public class Structure {
     public void initializeUniverse(int universeSize) {
         this.universeSize = universeSize;
         for (int v = 0; v < universeSize; v++) this.E.addVertex(v);
+        for (String R : arity.keySet()) this.relations.put(R, Relations.create(universeSize, arity.get(R)));
+        updateRelationIds();
     }
 
     /**
@@ -55,14 +83,42 @@ public class Structure {
     }
 
     /**
-     * Add a relation of given arity to the structure (empty by initialization).
+     * Add a relation of given arity to the structure (empty by initialization). The relation is created once the size
+     * of the universe is known.
      * @param R
      * @param arity
      */
     public void addRelation(String R, int arity) {
         if (R.equals("E")) return;
-        this.relations.put(R, new BitSet());
+        if (universeSize >= 0) this.relations.put(R, Relations.create(universeSize, arity));
         this.arity.put(R, arity);
+        if (!this.vocabulary.contains(R)) this.vocabulary.add(R);
+        updateRelationIds();
+    }
+
+    /** Store the relations by their position in the vocabulary. */
+    private void updateRelationIds() {
+        Relation[] relationById = new Relation[vocabulary.size()];
+        for (int id = 1; id < relationById.length; id++) relationById[id] = relations.get(vocabulary.get(id));
+        this.relationById = relationById;
+    }
+
+    /**
+     * The id of a relation is its position in the vocabulary, E has id 0. Ids allow to query relations without
+     * looking up their name, @see #inRelation(int, int[], int, int).
+     * @param R The relation.
+     * @return The id of R, or -1 if R is not in the vocabulary.
+     */
+    public int getRelationId(String R) {
+        return getArity(R) < 0 ? -1 : vocabulary.indexOf(R);
+    }
+
+    /**
+     * Returns the names of all relations of the structure, starting with E.
+     * @return The vocabulary of the structure.
+     */
+    public List<String> getVocabulary() {
+        return Collections.unmodifiableList(vocabulary);
     }
 
     /**
@@ -84,8 +140,43 @@ public class Structure {
      * @return
      */
     public boolean inRelation(String R, int... elements) {
-        if (R.equals("E")) return E.isAdjacent(elements[0], elements[1]);
-        return this.relations.get(R).get(getIndex(elements));
+        if (R.equals("E")) return isAdjacent(elements[0], elements[1]);
+        return this.relations.get(R).contains(elements);
+    }
+
+    /**
+     * Test if a tuple is in the relation with the given id. The tuple is given by arguments in which the placeholders
+     * @see Relation#X and @see Relation#Y are replaced by x and y, such that no tuple has to be created.
+     * @param id The id of the relation (@see #getRelationId).
+     * @param arguments Elements or placeholders, the length has to match the arity of the relation.
+     * @param x The element bound to x.
+     * @param y The element bound to y.
+     * @return True, if the tuple is in the relation.
+     */
+    public boolean inRelation(int id, int[] arguments, int x, int y) {
+        if (id == 0) {
+            int v = arguments[0], w = arguments[1];
+            return isAdjacent(v >= 0 ? v : v == Relation.X ? x : y, w >= 0 ? w : w == Relation.X ? x : y);
+        }
+        return relationById[id].contains(arguments, x, y);
+    }
+
+    /**
+     * Test if the two elements are in relation E. Once the structure is frozen, this is a lookup in the primitive adjacency
+     * arrays, before that the graph is queried.
+     * @param v The first element.
+     * @param w The second element.
+     * @return True, if (v,w) is in E.
+     */
+    public boolean isAdjacent(int v, int w) {
+        int[] offsets = this.offsets;
+        if (offsets == null) return E.isAdjacent(v, w);
+        int low = offsets[v], high = offsets[v+1] - 1;
+        if (high - low < LINEAR_SCAN) {
+            for (int i = low; i <= high && neighbors[i] <= w; i++) if (neighbors[i] == w) return true;
+            return false;
+        }
+        return Arrays.binarySearch(neighbors, low, high+1, w) >= 0;
     }
 
     /**
@@ -98,20 +189,72 @@ public class Structure {
      * @param elements
      */
     public void setInRelation(String R, int... elements) {
-        if (R.equals("E")) { E.addEdge(elements[0], elements[1]); return; }
-        this.relations.get(R).set(getIndex(elements));
+        if (R.equals("E")) {
+            E.addEdge(elements[0], elements[1]);
+            this.offsets = null;
+            return;
+        }
+        this.relations.get(R).add(elements);
     }
 
     /**
-     * Given a set of elements, this computes the index in a bit set that represents this relation. In fact, the index
-     * is e_0 * n^0 + e_1 * n + e_2 * n^2 + ...
-     * @param elements
-     * @return
+     * Adds all elements of the given set to the unary relation R. This avoids inserting the elements one by one when
+     * a relation is loaded as a whole.
+     * @param R A relation of arity one.
+     * @param elements The elements that shall be in R.
      */
-    private int getIndex(int... elements) {
-        int index = 0;
-        for (int i = 0; i < elements.length; i++) index += elements[i] * Math.pow(universeSize, i);
-        return index;
+    public void setUnaryRelation(String R, BitSet elements) {
+        if (getArity(R) != 1) throw new IllegalArgumentException("Relation " + R + " is not unary.");
+        ((DenseRelation) this.relations.get(R)).addAll(elements);
+    }
+
+    /**
+     * Calls the given action for every tuple of the relation R. Tuples of E are reported once with e_0 < e_1, and all
+     * tuples are reported in lexicographic order. The array passed to the action is reused between calls.
+     * @param R The relation to enumerate.
+     * @param action The action to perform on each tuple.
+     */
+    public void forEachTuple(String R, Consumer<int[]> action) {
+        if (R.equals("E")) {
+            int[] tuple = new int[2];
+            for (int v = 0; v < universeSize; v++) {
+                for (int w : getNeighbors(v)) {
+                    if (w <= v) continue;
+                    tuple[0] = v;
+                    tuple[1] = w;
+                    action.accept(tuple);
+                }
+            }
+            return;
+        }
+        this.relations.get(R).forEach(action);
+    }
+
+    /** The sorted neighbors of v with respect to E. */
+    private int[] getNeighbors(int v) {
+        if (offsets != null) return Arrays.copyOfRange(neighbors, offsets[v], offsets[v+1]);
+        return E.getNeighborhood(v).stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Called once the structure is completely read. Relations may switch to a representation that is faster to query
+     * but can not be modified efficiently anymore, and E is copied into primitive adjacency arrays. The graph object
+     * remains available for the tree decomposition, but all queries of E are answered from the adjacency arrays.
+     */
+    public void freeze() {
+        for (Map.Entry<String, Relation> entry : relations.entrySet()) entry.setValue(entry.getValue().freeze());
+        updateRelationIds();
+        if (offsets != null || universeSize < 0) return;
+        int[] offsets = new int[universeSize+1];
+        for (int v = 0; v < universeSize; v++) offsets[v+1] = offsets[v] + E.getNeighborhood(v).size();
+        int[] neighbors = new int[offsets[universeSize]];
+        for (int v = 0; v < universeSize; v++) {
+            int i = offsets[v];
+            for (int w : E.getNeighborhood(v)) neighbors[i++] = w;
+            Arrays.sort(neighbors, offsets[v], i);
+        }
+        this.neighbors = neighbors;
+        this.offsets = offsets;
     }
 
     /**
@@ -122,19 +265,6 @@ public class Structure {
         return E;
     }
 
-    /** Next assignment of elements (i.\,e, n-nary counting). */
-    private boolean next(int[] elements) {
-        for (int i = 0; i < elements.length; i++) {
-            elements[i]++;
-            if (elements[i] == universeSize) {
-                elements[i] = 0;
-            } else {
-                return true;
-            }
-        }
-        return false;
-    }
-
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -144,10 +274,7 @@ public class Structure {
         for (String R : relations.keySet()) {
             int arity = this.arity.get(R);
             sb.append(R + " of arity " + arity + ":\n");
-            int[] elements = new int[arity];
-            do {
-                if (inRelation(R, elements)) sb.append(Arrays.toString(elements) + "\n");
-            } while (next(elements));
+            forEachTuple(R, elements -> sb.append(Arrays.toString(elements) + "\n"));
         }
         sb.delete(sb.length()-1, sb.length());
         return sb.toString();
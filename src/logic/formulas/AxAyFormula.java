@@ -2,6 +2,7 @@ package logic.formulas;
 
 import jdrasil.graph.Bag;
 import logic.Structure;
+import logic.StateSink;
 import solver.MSOStateVector;
 
 import java.util.Map;
@@ -25,18 +26,18 @@ public class AxAyFormula extends Formula {
     }
 
     @Override
-    public boolean requiresWeakJoin() {
-        return false;
+    public int getBitsPerSlot(int tw) {
+        return 1;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public boolean requiresWeakJoin() {
+        return false;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        return false;
+    public boolean isComponentwise() {
+        return true;
     }
 
     @Override
@@ -50,8 +51,7 @@ public class AxAyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        return null;
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
     }
 
     @Override
@@ -60,8 +60,7 @@ public class AxAyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        return null;
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
     }
 
     @Override
@@ -70,9 +69,8 @@ public class AxAyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        if (isSatisfied(v, w, state.assignment)) return new MSOStateVector.MSOState[]{state};
-        return new MSOStateVector.MSOState[0];
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
+        if (isSatisfied(state, v, w, indexV, indexW)) sink.push(state);
     }
 
     @Override
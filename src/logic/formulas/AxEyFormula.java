@@ -2,6 +2,7 @@ package logic.formulas;
 
 import jdrasil.graph.Bag;
 import logic.Structure;
+import logic.StateSink;
 import solver.MSOStateVector;
 
 import java.util.Map;
@@ -20,21 +21,32 @@ public class AxEyFormula extends Formula {
         return tw + 1;
     }
 
+    @Override
+    public int getBitsPerSlot(int tw) {
+        return 1;
+    }
+
     @Override
     public boolean requiresWeakJoin() {
         return true;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public boolean isComponentwise() {
+        return true;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
+    public boolean isOrdered() {
         return true;
     }
 
+    @Override
+    public boolean dominates(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
+        // the flags only grow, a vertex whose neighbor was already seen is never worse off
+        return containsSlots(stateA, stateB);
+    }
+
     @Override
     public boolean finalCheck(MSOStateVector.MSOState state) {
         return true;
@@ -46,8 +58,7 @@ public class AxEyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        return new MSOStateVector.MSOState[0];
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
     }
 
     @Override
@@ -56,11 +67,11 @@ public class AxEyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
         // check if we did see the neighbor for v
-        if (state.stateDescription.get(this)[index] == 0) return new MSOStateVector.MSOState[0];
-        state.stateDescription.get(this)[index] = 0;
-        return new MSOStateVector.MSOState[]{state};
+        if (get(state, index) == 0) return;
+        set(state, index, 0);
+        sink.push(state);
     }
 
     @Override
@@ -69,18 +80,16 @@ public class AxEyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        if (isSatisfied(v, w, state.assignment)) state.stateDescription.get(this)[indexV] = 1;
-        if (isSatisfied(w, v, state.assignment)) state.stateDescription.get(this)[indexW] = 1;
-        return new MSOStateVector.MSOState[]{state};
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
+        if (isSatisfied(state, v, w, indexV, indexW)) set(state, indexV, 1);
+        if (isSatisfied(state, w, v, indexW, indexV)) set(state, indexW, 1);
+        sink.push(state);
     }
 
     @Override
     public boolean join(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB, MSOStateVector.MSOState newState, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
-        for (int i = 0; i < newState.stateDescription.get(this).length; i++) {
-            // logical or of the bits in both states
-            newState.stateDescription.get(this)[i] = Math.min(1, stateA.stateDescription.get(this)[i] + stateB.stateDescription.get(this)[i]);
-        }
+        // logical or of the bits in both states
+        orSlots(newState, stateA, stateB);
         return true;
     }
 
@@ -2,6 +2,7 @@ package logic.formulas;
 
 import jdrasil.graph.Bag;
 import logic.Structure;
+import logic.StateSink;
 import solver.MSOStateVector;
 
 import java.util.Map;
@@ -22,18 +23,18 @@ public class AxFormula extends Formula {
     }
 
     @Override
-    public boolean requiresWeakJoin() {
-        return false;
+    public int getBitsPerSlot(int tw) {
+        return 1;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        return true;
+    public boolean requiresWeakJoin() {
+        return false;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public boolean isComponentwise() {
+        return true;
     }
 
     @Override
@@ -47,9 +48,8 @@ public class AxFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        if (isSatisfied(v, v, state.assignment)) return new MSOStateVector.MSOState[]{state};
-        return new MSOStateVector.MSOState[0];
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
+        if (isSatisfied(state, v, v, index, index)) sink.push(state);
     }
 
     @Override
@@ -58,8 +58,7 @@ public class AxFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        return new MSOStateVector.MSOState[0];
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
     }
 
     @Override
@@ -68,8 +67,7 @@ public class AxFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        return new MSOStateVector.MSOState[0];
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
     }
 
     @Override
@@ -2,6 +2,7 @@ package logic.formulas;
 
 import jdrasil.graph.Bag;
 import logic.Structure;
+import logic.StateSink;
 import solver.MSOStateVector;
 
 import java.util.Map;
@@ -21,24 +22,30 @@ public class ExAyFormula extends Formula {
         return tw + 2;
     }
 
+    @Override
+    public int getBitsPerSlot(int tw) {
+        return 1;
+    }
+
     @Override
     public boolean requiresWeakJoin() {
         return true;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public boolean isOrdered() {
+        return true;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        return true;
+    public boolean dominates(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
+        // the candidates for x only shrink, hence, more candidates (or a confirmed one) are never worse off
+        return containsSlots(stateA, stateB);
     }
 
     @Override
     public boolean finalCheck(MSOStateVector.MSOState state) {
-        return state.stateDescription.get(this)[state.stateDescription.get(this).length-1] == 1;
+        return get(state, length-1) == 1;
     }
 
     @Override
@@ -47,9 +54,9 @@ public class ExAyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        state.stateDescription.get(this)[index] = 1;
-        return new MSOStateVector.MSOState[]{state};
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
+        set(state, index, 1);
+        sink.push(state);
     }
 
     @Override
@@ -58,10 +65,10 @@ public class ExAyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        if (state.stateDescription.get(this)[index] == 1) state.stateDescription.get(this)[state.stateDescription.get(this).length-1] = 1;
-        state.stateDescription.get(this)[index] = 0;
-        return new MSOStateVector.MSOState[]{state};
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
+        if (get(state, index) == 1) set(state, length-1, 1);
+        set(state, index, 0);
+        sink.push(state);
     }
 
     @Override
@@ -70,21 +77,19 @@ public class ExAyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        if (!isSatisfied(v, w, state.assignment)) state.stateDescription.get(this)[indexV] = 0;
-        if (!isSatisfied(w, v, state.assignment)) state.stateDescription.get(this)[indexW] = 0;
-        return new MSOStateVector.MSOState[]{state};
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
+        if (!isSatisfied(state, v, w, indexV, indexW)) set(state, indexV, 0);
+        if (!isSatisfied(state, w, v, indexW, indexV)) set(state, indexW, 0);
+        sink.push(state);
     }
 
     @Override
     public boolean join(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB, MSOStateVector.MSOState newState, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
-        int k = newState.stateDescription.get(this).length;
-        for (int i = 0; i < k-1; i++) {
-            // logical and of the bits in both states, unless the last one
-            newState.stateDescription.get(this)[i] = stateA.stateDescription.get(this)[i] * stateB.stateDescription.get(this)[i];
-        }
+        int k = length;
+        // logical and of the bits in both states, unless the last one
+        andSlots(newState, stateA, stateB);
         // logical or on the decision bit
-        newState.stateDescription.get(this)[k-1] = Math.min(1, stateA.stateDescription.get(this)[k-1] + stateB.stateDescription.get(this)[k-1]);
+        set(newState, k-1, Math.max(get(stateA, k-1), get(stateB, k-1)));
         return true;
     }
 
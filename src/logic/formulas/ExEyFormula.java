@@ -2,6 +2,7 @@ package logic.formulas;
 
 import jdrasil.graph.Bag;
 import logic.Structure;
+import logic.StateSink;
 import solver.MSOStateVector;
 
 import java.util.Map;
@@ -21,24 +22,30 @@ public class ExEyFormula extends Formula {
         return 1;
     }
 
+    @Override
+    public int getBitsPerSlot(int tw) {
+        return 1;
+    }
+
     @Override
     public boolean requiresWeakJoin() {
         return true;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public boolean isOrdered() {
+        return true;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        return true;
+    public boolean dominates(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
+        // the flags only grow, a witness that was already found is never worse off
+        return containsSlots(stateA, stateB);
     }
 
     @Override
     public boolean finalCheck(MSOStateVector.MSOState state) {
-        return state.stateDescription.get(this)[0] == 1;
+        return get(state, 0) == 1;
     }
 
     @Override
@@ -47,8 +54,7 @@ public class ExEyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        return new MSOStateVector.MSOState[0];
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
     }
 
     @Override
@@ -57,8 +63,7 @@ public class ExEyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        return new MSOStateVector.MSOState[0];
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
     }
 
     @Override
@@ -67,15 +72,15 @@ public class ExEyFormula extends Formula {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        if (isSatisfied(v, w, state.assignment)) state.stateDescription.get(this)[0] = 1;
-        if (isSatisfied(w, v, state.assignment)) state.stateDescription.get(this)[0] = 1;
-        return new MSOStateVector.MSOState[]{state};
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
+        if (isSatisfied(state, v, w, indexV, indexW)) set(state, 0, 1);
+        if (isSatisfied(state, w, v, indexW, indexV)) set(state, 0, 1);
+        sink.push(state);
     }
 
     @Override
     public boolean join(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB, MSOStateVector.MSOState newState, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
-        newState.stateDescription.get(this)[0] = Math.min(1, stateA.stateDescription.get(this)[0] + stateB.stateDescription.get(this)[0]);
+        orSlots(newState, stateA, stateB);
         return true;
     }
 
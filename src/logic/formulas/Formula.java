@@ -1,21 +1,24 @@
 package logic.formulas;
 
-import logic.LogicalObject;
+import logic.AbstractLogicalObject;
 import logic.Structure;
+import logic.quantifiers.Quantifier;
+import logic.relations.Relation;
+import solver.MSOStateVector;
 
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A logical formula that is part of the whole formula we model check on the given logical structure.
- * The formula consists of an atomic CNF part that can be checked against the structure and an assignment, and it provides
+ * The formula consists of an atomic CNF part that can be checked against the structure and a state, and it provides
  * abstract functions that are specific for the different kinds of formulas the MSO-Fragment contains.
  * These functions can modify some bit storage in an MSOState during the dynamic program and evaluate the formula with respect
  * to these information.
  */
-public abstract class Formula implements LogicalObject {
+public abstract class Formula extends AbstractLogicalObject {
 
     /** The logical structure on which we evaluate this formula. */
     Structure structure;
@@ -23,9 +26,34 @@ public abstract class Formula implements LogicalObject {
     /** Clauses of the underling atomic formula. */
     private List<String> clauses;
 
+    /** The clauses compiled to literals, @see #compile. */
+    private Literal[][] program;
+
+    /** Truth tables are only used for formulas with at most this many second-order variables. */
+    private static final int MAX_TABULATED_VARIABLES = 6;
+
+    /** The second-order variables that appear in the clauses. */
+    private List<String> variables;
+
+    /** The quantifier that binds variables[i] and the index of the variable within it, @see #bindVariables. */
+    private Quantifier[] owners;
+    private int[] ownerVariables;
+
+    /** True, if the formula is evaluated with truth tables, @see TruthTable. */
+    private boolean tabulated;
+
+    /** The last truth table for x < y and x >= y, respectively (both directions of an edge are usually queried). */
+    private final TruthTable[] tables;
+
     public Formula(Structure structure) {
         this.structure = structure;
         this.clauses = new LinkedList<>();
+        this.program = new Literal[0][];
+        this.variables = new ArrayList<>();
+        this.owners = new Quantifier[0];
+        this.ownerVariables = new int[0];
+        this.tabulated = true;
+        this.tables = new TruthTable[2];
     }
 
     /**
@@ -35,60 +63,232 @@ public abstract class Formula implements LogicalObject {
     public void addClause(String clause) {
         clause = clause.trim() + " ";
         this.clauses.add(clause);
+        this.program = Arrays.copyOf(program, program.length + 1);
+        this.program[program.length - 1] = compile(clause);
     }
 
     /**
-     * Checks if the formula is satisfied for the two given variables x and y under the given assignment.
+     * Parses a clause into its literals. A literal is an (eventually negated) relation of the structure followed by as
+     * many arguments as its arity, an (eventually negated) >=< followed by two arguments, or an (eventually negated)
+     * second-order variable followed by one argument. Arguments are the variables x and y, or elements of the universe.
+     * @param clause The clause as string.
+     * @return The literals of the clause.
+     */
+    private Literal[] compile(String clause) {
+        String[] tokens = clause.trim().split("\\s+");
+        List<Literal> literals = new ArrayList<>();
+        for (int i = 0; i < tokens.length; i++) {
+            // get the relational symbol and check if it is negated
+            String R = tokens[i];
+            boolean negated = false;
+            if (R.charAt(0) == '-') {
+                negated = true;
+                R = R.substring(1);
+            }
+
+            // equality and relations of the structure, if the arity is negative the relation must be in the assignment
+            int arity = R.equals("=") ? 2 : structure.getArity(R);
+            Literal literal = new Literal();
+            literal.negated = negated;
+            literal.kind = R.equals("=") ? Literal.EQUALITY : arity >= 0 ? Literal.RELATION : Literal.VARIABLE;
+            literal.relation = literal.kind == Literal.RELATION ? structure.getRelationId(R) : -1;
+            literal.variable = R;
+            if (literal.kind == Literal.VARIABLE) {
+                if (!variables.contains(R)) variables.add(R);
+                literal.variableIndex = variables.indexOf(R);
+            }
+            if (arity < 0) arity = 1;
+
+            // from the arity we know how many arguments we can parse from the clause
+            literal.arguments = new int[arity];
+            if (i + arity >= tokens.length) throw new IllegalArgumentException("Missing arguments of " + R + " in clause: " + clause);
+            for (int j = 0; j < arity; j++) {
+                String argument = tokens[i+j+1];
+                literal.arguments[j] = argument.equals("x") ? Relation.X : argument.equals("y") ? Relation.Y : Integer.parseInt(argument);
+            }
+            i += arity;
+            literals.add(literal);
+
+            // a set applied to an element does not depend on x and y and, thus, is not covered by the truth tables
+            if (literal.kind == Literal.VARIABLE && literal.arguments[0] >= 0) tabulated = false;
+        }
+        if (variables.size() > MAX_TABULATED_VARIABLES) tabulated = false;
+        return literals.toArray(new Literal[0]);
+    }
+
+    /**
+     * Resolve the second-order variables of the clauses to the quantifiers that bind them. Variables that are not bound
+     * by any quantifier are empty sets.
+     * @param quantifiers All quantifiers of the formula.
+     */
+    public void bindVariables(List<Quantifier> quantifiers) {
+        this.owners = new Quantifier[variables.size()];
+        this.ownerVariables = new int[variables.size()];
+        for (Quantifier Q : quantifiers) {
+            String[] names = Q.getVariables();
+            for (int j = 0; j < names.length; j++) {
+                int i = variables.indexOf(names[j]);
+                if (i < 0) continue;
+                owners[i] = Q;
+                ownerVariables[i] = j;
+            }
+        }
+    }
+
+    /** Checks if the element with the given index in the bag is in the i-th second-order variable of the state. */
+    private boolean isMember(MSOStateVector.MSOState state, int i, int index) {
+        return owners[i] != null && owners[i].isMember(state, ownerVariables[i], index);
+    }
+
+    /**
+     * Checks if the formula is satisfied for the two given variables x and y in the given state. Both elements have to
+     * be in the current bag, as the state only knows the sets restricted to the bag. A set applied to an element of the
+     * universe is, thus, only true if the element is x or y.
+     * @param state The state that defines the second-order variables.
      * @param x Element of the universe assigned to x.
      * @param y Element of the universe assigned to y.
-     * @param assignment Representation of quantified second-order variables in the form of bit sets.
+     * @param indexX Index of x in the bag.
+     * @param indexY Index of y in the bag.
      * @return True, if the formula is satisfied.
      */
-    public boolean isSatisfied(int x, int y, Map<String, BitSet> assignment) {
-        // go through all clauses, if one is not satisfied the whole formula is not satisfied
-        clauseloop: for (String clause : clauses) {
-            String[] literals = clause.replaceAll(" x ", " "+x+" ").replaceAll(" y ", " "+y+" ").split(" ");
-            // go through the literals, if one is satisfied the clause is satisfied and we can continue with the next clause
-            for (int i = 0; i < literals.length; i++) {
-                // get the relational symbol and check if it is negated
-                String R = literals[i];
-                boolean negated = false;
-                if (R.charAt(0) == '-') {
-                    negated = true;
-                    R = R.substring(1);
+    public boolean isSatisfied(MSOStateVector.MSOState state, int x, int y, int indexX, int indexY) {
+        if (!tabulated) {
+            // go through all clauses, if one is not satisfied the whole formula is not satisfied
+            clauseloop: for (Literal[] clause : program) {
+                // go through the literals, if one is satisfied the clause is satisfied and we can continue with the next clause
+                for (Literal literal : clause) {
+                    boolean member = false;
+                    if (literal.kind == Literal.VARIABLE) {
+                        int e = Literal.bind(literal.arguments[0], x, y);
+                        member = (e == x && isMember(state, literal.variableIndex, indexX))
+                                || (e == y && isMember(state, literal.variableIndex, indexY));
+                    }
+                    if (literal.isSatisfied(structure, x, y, member)) continue clauseloop;
                 }
+                return false;
+            }
+            return true;
+        }
 
-                // catch equality as special case
-                if (R.equals("=")) {
-                    int first = Integer.parseInt(literals[i+1]);
-                    int second = Integer.parseInt(literals[i+2]);
-                    i += 2;
-                    if (!negated && first == second) continue clauseloop;
-                    if (negated && first != second) continue clauseloop;
-                    continue;
-                }
+        // for fixed x and y, the formula only depends on the sets that contain x and y
+        int k = variables.size();
+        int index = 0;
+        for (int i = 0; i < k; i++) {
+            if (isMember(state, i, indexX)) index |= 1 << i;
+            if (isMember(state, i, indexY)) index |= 1 << (k + i);
+        }
+        int slot = x < y ? 0 : 1;
+        TruthTable table = tables[slot];
+        if (table == null || table.x != x || table.y != y) {
+            table = new TruthTable(x, y, 1 << (2*k));
+            tables[slot] = table;
+        }
+        byte entry = table.entries[index];
+        if (entry == TruthTable.UNKNOWN) {
+            entry = evaluate(x, y, index & ((1 << k) - 1), index >>> k) ? TruthTable.TRUE : TruthTable.FALSE;
+            table.entries[index] = entry;
+        }
+        return entry == TruthTable.TRUE;
+    }
+
+    /**
+     * Evaluates the clauses for x and y, where the i-th bit of xSets (ySets) indicates whether x (y) is in the i-th
+     * second-order variable.
+     */
+    private boolean evaluate(int x, int y, int xSets, int ySets) {
+        clauseloop: for (Literal[] clause : program) {
+            for (Literal literal : clause) {
+                if (literal.isSatisfied(structure, x, y, xSets, ySets)) continue clauseloop;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * For fixed elements x and y, the value of the formula only depends on the membership of x and y in the second-order
+     * variables. A truth table stores this value for each combination of memberships, such that all states of a bag that
+     * query the same pair (for instance in an edge-bag) evaluate the clauses only once per combination. Entries are
+     * computed lazily; as entries are single bytes, concurrent writes of the same value are harmless.
+     */
+    private static class TruthTable {
 
-                // get the arity, if it is negative the relation is not part of the structure and, hence, must be in the assignment
-                int arity = structure.getArity(R);
-                boolean inStructure = arity >= 0;
-                if (!inStructure) arity = 1;
+        /** Values of the entries. */
+        static final byte UNKNOWN = 0;
+        static final byte FALSE = 1;
+        static final byte TRUE = 2;
 
-                // from the arity we know how many elements we can parse from the clause
-                int[] elements = new int[arity];
-                for (int j = 0; j < arity; j++) elements[j] = Integer.parseInt(literals[i+j+1]);
-                i += arity;
+        /** The pair for which the table is computed. */
+        final int x, y;
 
-                // if the relation is in the structure we query it
-                if (inStructure && !negated && structure.inRelation(R, elements)) continue clauseloop;
-                if (inStructure && negated && !structure.inRelation(R, elements)) continue clauseloop;
+        /** The entry with index $i$ corresponds to the memberships encoded in the bits of $i$ (first x, then y). */
+        final byte[] entries;
 
-                // if not, we know it has arity 1 and we look it up in the assignment
-                if (!inStructure && !negated && assignment.containsKey(R) && assignment.get(R).get(elements[0])) continue clauseloop;
-                if (!inStructure && negated && (!assignment.containsKey(R) || !assignment.get(R).get(elements[0]))) continue clauseloop;
+        TruthTable(int x, int y, int size) {
+            this.x = x;
+            this.y = y;
+            this.entries = new byte[size];
+        }
+    }
+
+    /**
+     * A literal of a compiled clause.
+     */
+    private static class Literal {
+
+        /** Kinds of literals. */
+        static final int EQUALITY = 0;
+        static final int RELATION = 1;
+        static final int VARIABLE = 2;
+
+        /** The kind of this literal. */
+        int kind;
+
+        /** True, if the literal is negated. */
+        boolean negated;
+
+        /** Id of the relation in the structure (@see Structure#getRelationId), only for relations. */
+        int relation;
+
+        /** Name of the second-order variable, only for variables. */
+        String variable;
+
+        /** Index of the second-order variable in the variables of the formula, only for variables. */
+        int variableIndex;
+
+        /** Elements or placeholders for x and y (@see Relation#X). */
+        int[] arguments;
+
+        /**
+         * Evaluate the literal with the given elements bound to x and y, where member is the membership of the argument
+         * of a second-order variable.
+         */
+        boolean isSatisfied(Structure structure, int x, int y, boolean member) {
+            boolean value;
+            switch (kind) {
+                case EQUALITY:
+                    value = bind(arguments[0], x, y) == bind(arguments[1], x, y);
+                    break;
+                case RELATION:
+                    value = structure.inRelation(relation, arguments, x, y);
+                    break;
+                default:
+                    value = member;
             }
-            return false;
+            return value != negated;
+        }
+
+        /** Evaluate the literal, where membership of x and y in the second-order variables is given by bit masks. */
+        boolean isSatisfied(Structure structure, int x, int y, int xSets, int ySets) {
+            if (kind != VARIABLE) return isSatisfied(structure, x, y, false);
+            int sets = arguments[0] == Relation.X ? xSets : ySets;
+            return isSatisfied(structure, x, y, (sets >>> variableIndex & 1) == 1);
+        }
+
+        /** The element e, or x or y if e is a placeholder. */
+        static int bind(int e, int x, int y) {
+            return e >= 0 ? e : e == Relation.X ? x : y;
         }
-        return true;
     }
 
 //    /**
@@ -0,0 +1,43 @@
+package logic.quantifiers;
+
+/**
+ * Helper for quantifiers that label the vertices of the bag with the connected component they belong to (0 = the vertex
+ * is not in the set). The labels themselves carry no meaning, only the partition they induce. To ensure that equal
+ * partitions result in equal states, labels are kept in a canonical form: components are numbered 1, 2, ... in the
+ * order of their first vertex in the bag.
+ */
+final class ComponentLabels {
+
+    private ComponentLabels() {
+    }
+
+    /**
+     * Renumber the components by their first occurrence.
+     * @param labels The labels of the vertices, arbitrary non-negative numbers.
+     * @param n Only labels[0],...,labels[n-1] are vertices of the bag, further slots are not touched.
+     */
+    static void normalize(int[] labels, int n) {
+        int max = 0;
+        for (int i = 0; i < n; i++) max = Math.max(max, labels[i]);
+        int[] map = new int[max + 1];
+        int next = 1;
+        for (int i = 0; i < n; i++) {
+            if (labels[i] == 0) continue;
+            if (map[labels[i]] == 0) map[labels[i]] = next++;
+            labels[i] = map[labels[i]];
+        }
+    }
+
+    /**
+     * Put a vertex into a component of its own.
+     * @param labels The canonical labels of the vertices.
+     * @param n The number of vertices of the bag.
+     * @param index The vertex, which has label 0.
+     */
+    static void addSingleton(int[] labels, int n, int index) {
+        int max = 0;
+        for (int i = 0; i < n; i++) max = Math.max(max, labels[i]);
+        labels[index] = max + 1;
+        normalize(labels, n);
+    }
+}
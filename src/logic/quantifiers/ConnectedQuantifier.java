@@ -1,16 +1,17 @@
 package logic.quantifiers;
 
 import jdrasil.graph.Bag;
+import logic.AbstractLogicalObject;
+import logic.StateSink;
 import solver.MSOStateVector;
 
-import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Map;
 
 /**
- * This quantifier guesses a connected subgraph (with respect to E).
+ * This quantifier guesses a connected subgraph (with respect to E). The vertices of the bag are labeled with their
+ * component, the labels are canonical (@see ComponentLabels), such that every partition has exactly one state.
  */
-public class ConnectedQuantifier implements Quantifier {
+public class ConnectedQuantifier extends AbstractLogicalObject implements Quantifier {
 
     /** Name of the variable */
     private String variable;
@@ -23,9 +24,24 @@ public class ConnectedQuantifier implements Quantifier {
         this.variable = variable[1];
     }
 
+    @Override
+    public String[] getVariables() {
+        return new String[]{variable};
+    }
+
+    @Override
+    public boolean isMember(MSOStateVector.MSOState state, int variable, int index) {
+        return get(state, index) > 0;
+    }
+
     @Override
     public int getStateSize(int tw) {
-        return tw + 1;
+        return tw + 2; // a component label per vertex of the bag and a flag that indicates that the set is closed
+    }
+
+    @Override
+    public int getBitsPerSlot(int tw) {
+        return bitsFor(tw + 2);
     }
 
     @Override
@@ -34,23 +50,16 @@ public class ConnectedQuantifier implements Quantifier {
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        BitSet mask = new BitSet();
-        int[] stateDescription = state.stateDescription.get(this);
-        for (int i = 0; i < stateDescription.length; i++) {
-            if (stateDescription[i] > 0) mask.set(i);
-        }
-        return mask.hashCode();
+    public int getWeakKeySize() {
+        return words(length - 1, 1);
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        int[] stateDescriptionA = stateA.stateDescription.get(this);
-        int[] stateDescriptionB = stateB.stateDescription.get(this);
-        for (int i = 0; i < stateDescriptionA.length; i++) {
-            if ( (stateDescriptionA[i] > 0) != (stateDescriptionB[i] > 0) ) return false;
+    public void weakKey(MSOStateVector.MSOState state, long[] key, int from) {
+        // states are compatible if they contain the same vertices, their key is the mask of the vertices of the bag that are in the set (the flag is ignored)
+        for (int i = 0; i < length - 1; i++) {
+            if (get(state, i) > 0) key[from + (i >>> 6)] |= 1L << i;
         }
-        return true;
     }
 
     @Override
@@ -59,25 +68,24 @@ public class ConnectedQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
 
         // once we left the connected component, we can not add vertices to it anymore
-        if (state.stateDescription.get(this)[0] == -1) return new MSOStateVector.MSOState[]{state};
-
-        MSOStateVector.MSOState[] newStates = new MSOStateVector.MSOState[2];
+        if (isClosed(state)) {
+            sink.push(state);
+            return;
+        }
 
         // don't take the vertex
-        newStates[0] = state.getCopy();
-        newStates[0].stateDescription.get(this)[index] = 0;
-
-        // take the vertex -> give it the smallest free non negative value
-        newStates[1] = state.getCopy();
-        int value = Arrays.stream(newStates[1].stateDescription.get(this)).max().getAsInt()+1;
-        newStates[1].stateDescription.get(this)[index] = value;
-        if (!newStates[1].assignment.containsKey(variable)) newStates[1].assignment.put(variable, new BitSet());
-        newStates[1].assignment.get(variable).set(v);
-
-        return newStates;
+        MSOStateVector.MSOState without = state.getCopy();
+        set(without, index, 0);
+        sink.push(without);
+
+        // take the vertex -> it forms a component of its own, the last branch reuses the state itself
+        int[] components = getSlots(state);
+        ComponentLabels.addSingleton(components, length-1, index);
+        setSlots(state, components);
+        sink.push(state);
     }
 
     @Override
@@ -86,38 +94,43 @@ public class ConnectedQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
 
         // once we left the connected component, we can not add vertices to it anymore, same holds if the vertex was not chosen
-        if (state.stateDescription.get(this)[0] == -1 || state.stateDescription.get(this)[index] == 0) return new MSOStateVector.MSOState[]{state};
+        if (isClosed(state) || get(state, index) == 0) {
+            sink.push(state);
+            return;
+        }
 
         // get the components and the component of the current variable
-        int[] components = state.stateDescription.get(this);
+        int[] components = getSlots(state);
         int component = components[index];
 
         // count how many elements are in the same or in another component
         int sameComponent = 0;
         int otherComponent = 0;
-        for (int x : components) {
+        for (int i = 0; i < length-1; i++) {
+            int x = components[i];
             if (x == component) sameComponent++;
             else if (x > 0) otherComponent++;
         }
 
         // going to delete last element -> connected component is closed now
         if (sameComponent == 1 && otherComponent == 0) {
-            for (int i = 0; i < components.length; i++) components[i] = -1;
-            state.stateDescription.put(this, components);
-            return new MSOStateVector.MSOState[]{state};
+            set(state, index, 0);
+            set(state, length-1, 1);
+            sink.push(state);
+            return;
         }
 
         // delete the last element of the component, but the whole component is not closed yet -> not valid
-        if (sameComponent == 1 && otherComponent > 0) {
-            return new MSOStateVector.MSOState[]{};
-        }
+        if (sameComponent == 1 && otherComponent > 0) return;
 
         // just remove the element
-        state.stateDescription.get(this)[index] = 0;
-        return new MSOStateVector.MSOState[]{state};
+        components[index] = 0;
+        ComponentLabels.normalize(components, length-1);
+        setSlots(state, components);
+        sink.push(state);
     }
 
     @Override
@@ -126,16 +139,22 @@ public class ConnectedQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
 
         // once we left the connected component, we can not add vertices to it anymore
-        if (state.stateDescription.get(this)[0] == -1) return new MSOStateVector.MSOState[]{state};
+        if (isClosed(state)) {
+            sink.push(state);
+            return;
+        }
 
         // update components
-        int[] components = state.stateDescription.get(this);
+        int[] components = getSlots(state);
 
         // if we do not connect components, do nothing
-        if (components[indexV] == 0 || components[indexW] == 0) return new MSOStateVector.MSOState[]{state};
+        if (components[indexV] == 0 || components[indexW] == 0) {
+            sink.push(state);
+            return;
+        }
 
         int toReplace = 0;
         int replaceWith = 0;
@@ -149,23 +168,24 @@ public class ConnectedQuantifier implements Quantifier {
         for (int i = 0; i < components.length; i++) {
             if (components[i] == toReplace) components[i] = replaceWith;
         }
-        state.stateDescription.put(this, components);
-        return new MSOStateVector.MSOState[]{state};
+        ComponentLabels.normalize(components, length-1);
+        setSlots(state, components);
+        sink.push(state);
     }
 
     @Override
     public boolean join(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB, MSOStateVector.MSOState newState, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
         // if exactly one side is a solution return it, if both are done this is not a valid join
-        if (stateA.stateDescription.get(this)[0] == -1 && stateB.stateDescription.get(this)[0] == -1) return false;
-        if (stateA.stateDescription.get(this)[0] == -1) return true; // newState is copy of A anyway
-        if (stateB.stateDescription.get(this)[0] == -1) {
-            newState.stateDescription.put(this, Arrays.copyOf(stateB.stateDescription.get(this), stateB.stateDescription.get(this).length));
+        if (isClosed(stateA) && isClosed(stateB)) return false;
+        if (isClosed(stateA)) return true; // newState is copy of A anyway
+        if (isClosed(stateB)) {
+            setSlots(newState, getSlots(stateB));
             return true;
         }
 
         // join components
-        int[] result = Arrays.copyOf(stateA.stateDescription.get(this), stateA.stateDescription.get(this).length);
-        int[] other = stateB.stateDescription.get(this);
+        int[] result = getSlots(stateA);
+        int[] other = getSlots(stateB);
         for (int i = 0; i < result.length-1; i++) {
             for (int j = i+1; j < result.length; j++) {
                 if (result[i] <= 0 || result[j] <= 0 || result[i] == result[j]) continue; // no need to join
@@ -177,10 +197,16 @@ public class ConnectedQuantifier implements Quantifier {
                 }
             }
         }
-        newState.stateDescription.put(this, result);
+        ComponentLabels.normalize(result, length-1);
+        setSlots(newState, result);
         return true;
     }
 
+    /** The last slot indicates that the connected set was closed, i.\,e., all its vertices were forgotten. */
+    private boolean isClosed(MSOStateVector.MSOState state) {
+        return get(state, length-1) == 1;
+    }
+
     @Override
     public boolean finalCheck(MSOStateVector.MSOState state) { return true; }
 
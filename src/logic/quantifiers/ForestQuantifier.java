@@ -1,14 +1,17 @@
 package logic.quantifiers;
 
 import jdrasil.graph.Bag;
+import logic.AbstractLogicalObject;
+import logic.StateSink;
 import solver.MSOStateVector;
 
 import java.util.*;
 
 /**
- * This quantifier guesses a acyclic subgraph (with respect to E).
+ * This quantifier guesses a acyclic subgraph (with respect to E). The vertices of the bag are labeled with their
+ * component, the labels are canonical (@see ComponentLabels), such that every partition has exactly one state.
  */
-public class ForestQuantifier implements Quantifier {
+public class ForestQuantifier extends AbstractLogicalObject implements Quantifier {
 
     /** Name of the variable */
     private String variable;
@@ -21,34 +24,47 @@ public class ForestQuantifier implements Quantifier {
         this.variable = variable[1];
     }
 
+    @Override
+    public boolean isComponentwise() {
+        return true;
+    }
+
+    @Override
+    public String[] getVariables() {
+        return new String[]{variable};
+    }
+
+    @Override
+    public boolean isMember(MSOStateVector.MSOState state, int variable, int index) {
+        return get(state, index) > 0;
+    }
+
     @Override
     public int getStateSize(int tw) {
         return tw + 1;
     }
 
+    @Override
+    public int getBitsPerSlot(int tw) {
+        return bitsFor(tw + 2);
+    }
+
     @Override
     public boolean requiresWeakJoin() {
         return true;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        BitSet mask = new BitSet();
-        int[] stateDescription = state.stateDescription.get(this);
-        for (int i = 0; i < stateDescription.length; i++) {
-            if (stateDescription[i] > 0) mask.set(i);
-        }
-        return mask.hashCode();
+    public int getWeakKeySize() {
+        return words(length, 1);
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        int[] stateDescriptionA = stateA.stateDescription.get(this);
-        int[] stateDescriptionB = stateB.stateDescription.get(this);
-        for (int i = 0; i < stateDescriptionA.length; i++) {
-            if ( (stateDescriptionA[i] > 0) != (stateDescriptionB[i] > 0) ) return false;
+    public void weakKey(MSOStateVector.MSOState state, long[] key, int from) {
+        // states are compatible if they contain the same vertices, their key is the mask of the vertices of the bag that are in the set
+        for (int i = 0; i < length; i++) {
+            if (get(state, i) > 0) key[from + (i >>> 6)] |= 1L << i;
         }
-        return true;
     }
 
     @Override
@@ -57,21 +73,17 @@ public class ForestQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        MSOStateVector.MSOState[] newStates = new MSOStateVector.MSOState[2];
-
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
         // don't take v
-        newStates[0] = state.getCopy();
-        newStates[0].stateDescription.get(this)[index] = 0;
-
-        // take v
-        newStates[1] = state.getCopy();
-        int value = Arrays.stream(newStates[1].stateDescription.get(this)).max().getAsInt()+1;
-        newStates[1].stateDescription.get(this)[index] = value;
-        if (!newStates[1].assignment.containsKey(variable)) newStates[1].assignment.put(variable, new BitSet());
-        newStates[1].assignment.get(variable).set(v);
+        MSOStateVector.MSOState without = state.getCopy();
+        set(without, index, 0);
+        sink.push(without);
 
-        return newStates;
+        // take v -> it forms a component of its own, the last branch reuses the state itself
+        int[] values = getSlots(state);
+        ComponentLabels.addSingleton(values, length, index);
+        setSlots(state, values);
+        sink.push(state);
     }
 
     @Override
@@ -80,9 +92,16 @@ public class ForestQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        state.stateDescription.get(this)[index] = 0;
-        return new MSOStateVector.MSOState[]{state};
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
+        if (get(state, index) == 0) {
+            sink.push(state);
+            return;
+        }
+        int[] values = getSlots(state);
+        values[index] = 0;
+        ComponentLabels.normalize(values, length);
+        setSlots(state, values);
+        sink.push(state);
     }
 
     @Override
@@ -91,18 +110,22 @@ public class ForestQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        int[] values = state.stateDescription.get(this);
-        if (values[indexV] == 0 || values[indexW] == 0) return new MSOStateVector.MSOState[]{state}; // don't do anything
-        if (values[indexV] == values[indexW]) return new MSOStateVector.MSOState[0]; // not valid, return nothing
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
+        int[] values = getSlots(state);
+        if (values[indexV] == 0 || values[indexW] == 0) { // don't do anything
+            sink.push(state);
+            return;
+        }
+        if (values[indexV] == values[indexW]) return; // not valid, push nothing
 
         int replace = values[indexV] < values[indexW] ? values[indexW] : values[indexV];
         int with = values[indexV] >= values[indexW] ? values[indexW] : values[indexV];
         for (int i = 0; i < values.length; i++) {
             if (values[i] == replace) values[i] = with;
         }
-        state.stateDescription.put(this, values);
-        return new MSOStateVector.MSOState[]{state};
+        ComponentLabels.normalize(values, length);
+        setSlots(state, values);
+        sink.push(state);
     }
 
     /**
@@ -158,9 +181,9 @@ public class ForestQuantifier implements Quantifier {
     public boolean join(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB, MSOStateVector.MSOState newState, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
 
         // initialize three union-find data structures
-        int[] firstForest = new int[stateA.stateDescription.get(this).length];
-        int[] secondForest = new int[stateA.stateDescription.get(this).length];
-        int[] joinedForest = new int[stateA.stateDescription.get(this).length];
+        int[] firstForest = new int[length];
+        int[] secondForest = new int[length];
+        int[] joinedForest = new int[length];
         for (int i = 0; i < firstForest.length; i++) {
             firstForest[i] = i;
             secondForest[i] = i;
@@ -169,8 +192,8 @@ public class ForestQuantifier implements Quantifier {
 
         // compute for both bags a spanning forest in the form of an edge list
         List<Integer> forestEdges = new ArrayList<>();
-        computeSpanningForest(firstForest, stateA.stateDescription.get(this), forestEdges);
-        computeSpanningForest(secondForest, stateB.stateDescription.get(this), forestEdges);
+        computeSpanningForest(firstForest, getSlots(stateA), forestEdges);
+        computeSpanningForest(secondForest, getSlots(stateB), forestEdges);
 
         // combine the the spanning forests, return false if a cycle is detected
         for (int i = 0; i < forestEdges.size(); i+=2) {
@@ -180,8 +203,8 @@ public class ForestQuantifier implements Quantifier {
         // compress paths such that the union-find structure represents components
         for (int i = 0; i < joinedForest.length; i++) find(joinedForest, i);
 
-        // map union-find forest to new components
-        int[] components = stateA.stateDescription.get(this);
+        // map union-find forest to new components, numbered by first occurrence (@see ComponentLabels)
+        int[] components = getSlots(stateA);
         int numberOfComponents = 1;
         int[] map = new int[joinedForest.length];
         for (int i = 0; i < map.length; i++) {
@@ -194,7 +217,7 @@ public class ForestQuantifier implements Quantifier {
         }
 
         // update components in new state
-        newState.stateDescription.put(this, joinedForest);
+        setSlots(newState, joinedForest);
         return true;
     }
 
@@ -1,16 +1,17 @@
 package logic.quantifiers;
 
 import jdrasil.graph.Bag;
+import logic.AbstractLogicalObject;
+import logic.StateSink;
 import solver.MSOStateVector;
 
-import java.util.BitSet;
 import java.util.Map;
 
 /**
  * An optimization quantifier is an existential second-order quantifier that minimizes a function over the
  * elements he uses in his quantified set.
  */
-public class OptimizationQuantifier implements Quantifier {
+public class OptimizationQuantifier extends AbstractLogicalObject implements Quantifier {
 
     /** Name of the variable */
     private String variable;
@@ -34,23 +35,43 @@ public class OptimizationQuantifier implements Quantifier {
         }
     }
 
+    /**
+     * Check whether no weight is negative. Then the value of a state never decreases while it is extended, hence, it is
+     * a lower bound for the value of every solution that is found from it.
+     * @return True, if all weights are non-negative.
+     */
+    public boolean hasNonNegativeWeights() {
+        for (int w : weights) if (w < 0) return false;
+        return true;
+    }
+
     @Override
-    public int getStateSize(int tw) {
-        return tw + 1;
+    public boolean isComponentwise() {
+        return true;
     }
 
     @Override
-    public boolean requiresWeakJoin() {
-        return false;
+    public String[] getVariables() {
+        return new String[]{variable};
+    }
+
+    @Override
+    public boolean isMember(MSOStateVector.MSOState state, int variable, int index) {
+        return get(state, index) == 1;
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public int getStateSize(int tw) {
+        return tw + 1;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
+    public int getBitsPerSlot(int tw) {
+        return 1;
+    }
+
+    @Override
+    public boolean requiresWeakJoin() {
         return false;
     }
 
@@ -60,21 +81,16 @@ public class OptimizationQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        MSOStateVector.MSOState[] newStates = new MSOStateVector.MSOState[2];
-
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
         // don't take v
-        newStates[0] = state.getCopy();
-        newStates[0].stateDescription.get(this)[index] = 0;
-
-        // take v
-        newStates[1] = state.getCopy();
-        newStates[1].stateDescription.get(this)[index] = 1;
-        newStates[1].value += weights[v];
-        if (!newStates[1].assignment.containsKey(variable)) newStates[1].assignment.put(variable, new BitSet());
-        newStates[1].assignment.get(variable).set(v);
-
-        return newStates;
+        MSOStateVector.MSOState without = state.getCopy();
+        set(without, index, 0);
+        sink.push(without);
+
+        // take v, the last branch reuses the state itself
+        set(state, index, 1);
+        state.value += weights[v];
+        sink.push(state);
     }
 
     @Override
@@ -83,9 +99,9 @@ public class OptimizationQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        state.stateDescription.get(this)[index] = 0;
-        return new MSOStateVector.MSOState[]{state};
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
+        set(state, index, 0);
+        sink.push(state);
     }
 
     @Override
@@ -94,8 +110,7 @@ public class OptimizationQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        return new MSOStateVector.MSOState[0];
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
     }
 
     @Override
@@ -103,7 +118,7 @@ public class OptimizationQuantifier implements Quantifier {
         // update the value, which is the sum minus elements in the bag (which are counted twice)
         newState.value = stateA.value + stateB.value;
         for (Integer v : bag.vertices) {
-            if (newState.stateDescription.get(this)[treeIndex.get(v)] == 0) continue;
+            if (get(newState, treeIndex.get(v)) == 0) continue;
             newState.value -= weights[v];
         }
         return true;
@@ -1,9 +1,10 @@
 package logic.quantifiers;
 
 import jdrasil.graph.Bag;
+import logic.AbstractLogicalObject;
+import logic.StateSink;
 import solver.MSOStateVector;
 
-import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,7 +12,7 @@ import java.util.Map;
  * A partition quantifier divides the universe into a given amount of disjoint sets. For instance, the classical 3-coloring
  * formula can be implement using one partition quantifier over three sets R, G, B.
  */
-public class PartitionQuantifier implements Quantifier {
+public class PartitionQuantifier extends AbstractLogicalObject implements Quantifier {
 
     /** Variables are represented by integers that can be assigned to atoms. */
     private Map<String, Integer> variableToValue;
@@ -34,23 +35,35 @@ public class PartitionQuantifier implements Quantifier {
     }
 
     @Override
-    public int getStateSize(int tw) {
-        return tw + 1;
+    public boolean isComponentwise() {
+        return true;
     }
 
     @Override
-    public boolean requiresWeakJoin() {
-        return false;
+    public String[] getVariables() {
+        String[] variables = new String[maxValue];
+        for (int i = 0; i < maxValue; i++) variables[i] = valueToVariable.get(i);
+        return variables;
     }
 
     @Override
-    public boolean weakEquals(MSOStateVector.MSOState stateA, MSOStateVector.MSOState stateB) {
-        return false;
+    public boolean isMember(MSOStateVector.MSOState state, int variable, int index) {
+        return get(state, index) == variable;
+    }
+
+    @Override
+    public int getStateSize(int tw) {
+        return tw + 1;
+    }
+
+    @Override
+    public int getBitsPerSlot(int tw) {
+        return bitsFor(maxValue);
     }
 
     @Override
-    public int weakHashCode(MSOStateVector.MSOState state) {
-        return 0;
+    public boolean requiresWeakJoin() {
+        return false;
     }
 
     @Override
@@ -59,16 +72,12 @@ public class PartitionQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] introduce(MSOStateVector.MSOState state, int v, int index) {
-        MSOStateVector.MSOState[] newStates = new MSOStateVector.MSOState[maxValue];
+    public void introduce(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
         for (int i = 0; i < maxValue; i++) {
-            newStates[i] = state.getCopy();
-            newStates[i].stateDescription.get(this)[index] = i;
-            if (!newStates[i].assignment.containsKey(valueToVariable.get(i)))
-                newStates[i].assignment.put(valueToVariable.get(i), new BitSet());
-            newStates[i].assignment.get(valueToVariable.get(i)).set(v);
+            MSOStateVector.MSOState newState = i < maxValue-1 ? state.getCopy() : state; // the last branch reuses the state itself
+            set(newState, index, i);
+            sink.push(newState);
         }
-        return newStates;
     }
 
     @Override
@@ -77,9 +86,9 @@ public class PartitionQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] forget(MSOStateVector.MSOState state, int v, int index) {
-        state.stateDescription.get(this)[index] = 0;
-        return new MSOStateVector.MSOState[]{state};
+    public void forget(MSOStateVector.MSOState state, int v, int index, StateSink sink) {
+        set(state, index, 0);
+        sink.push(state);
     }
 
     @Override
@@ -88,8 +97,7 @@ public class PartitionQuantifier implements Quantifier {
     }
 
     @Override
-    public MSOStateVector.MSOState[] edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW) {
-        return null;
+    public void edge(MSOStateVector.MSOState state, int v, int w, int indexV, int indexW, StateSink sink) {
     }
 
     @Override
@@ -1,11 +1,27 @@
 package logic.quantifiers;
 
 import logic.LogicalObject;
+import solver.MSOStateVector;
 
 /**
  * This interface represents a second-order quantifier that binds multiple second-order variables.
  */
 public interface Quantifier extends LogicalObject {
 
+    /**
+     * The second-order variables bound by this quantifier.
+     * @return The names of the variables.
+     */
+    public String[] getVariables();
+
+    /**
+     * Checks whether an element of the current bag is contained in a variable of this quantifier. States do not store
+     * the sets itself, the membership of the elements of the bag is encoded in the slots of the quantifier.
+     * @param state The state.
+     * @param variable Index of the variable in @see getVariables.
+     * @param index The index of the element in the bag.
+     * @return True, if the element is in the set.
+     */
+    public boolean isMember(MSOStateVector.MSOState state, int variable, int index);
 
 }
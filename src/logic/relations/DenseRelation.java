@@ -0,0 +1,84 @@
+package logic.relations;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * A relation stored as bit array with one bit per possible tuple, i.\,e., n^k bits for a relation of arity k. The tuple
+ * (e_0,...,e_{k-1}) has index (...((e_0 * n) + e_1) * n + ...) + e_{k-1}, which orders the bits lexicographically. This
+ * is the representation of choice for unary relations and small universes.
+ */
+public class DenseRelation implements Relation {
+
+    /** Size of the universe. */
+    private final int n;
+
+    /** Arity of the relation. */
+    private final int arity;
+
+    /** The bit of each tuple in the relation is set. */
+    private final BitSet bits;
+
+    /**
+     * Create an empty relation. It is required that n^arity fits into an int.
+     * @param n The size of the universe.
+     * @param arity The arity of the relation.
+     */
+    public DenseRelation(int n, int arity) {
+        if (Relations.cells(n, arity) > Integer.MAX_VALUE) throw new IllegalArgumentException("A dense relation of arity " + arity + " over " + n + " elements does not fit into a bit set.");
+        this.n = n;
+        this.arity = arity;
+        this.bits = new BitSet();
+    }
+
+    /** Index of a tuple in the bit set, placeholders are replaced by x and y. */
+    private int index(int[] tuple, int x, int y) {
+        int index = 0;
+        for (int i = 0; i < arity; i++) {
+            int e = tuple[i];
+            index = index * n + (e >= 0 ? e : e == X ? x : y);
+        }
+        return index;
+    }
+
+    @Override
+    public int getArity() {
+        return arity;
+    }
+
+    @Override
+    public boolean contains(int[] arguments, int x, int y) {
+        return bits.get(index(arguments, x, y));
+    }
+
+    @Override
+    public void add(int... tuple) {
+        bits.set(index(tuple, 0, 0));
+    }
+
+    /**
+     * Adds all tuples whose index is set in the given bit set, for a unary relation these are just the elements.
+     * @param indices The indices of the tuples to add.
+     */
+    public void addAll(BitSet indices) {
+        bits.or(indices);
+    }
+
+    @Override
+    public int size() {
+        return bits.cardinality();
+    }
+
+    @Override
+    public void forEach(Consumer<int[]> action) {
+        int[] tuple = new int[arity];
+        for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index+1)) {
+            int rest = index;
+            for (int i = arity-1; i >= 0; i--) {
+                tuple[i] = rest % n;
+                rest /= n;
+            }
+            action.accept(tuple);
+        }
+    }
+}
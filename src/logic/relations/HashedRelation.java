@@ -0,0 +1,138 @@
+package logic.relations;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A sparse relation stored as open-addressing hash set of tuples packed into a long, i.\,e., the tuple
+ * (e_0,...,e_{k-1}) is stored as (...((e_0 * n) + e_1) * n + ...) + e_{k-1}. The memory is linear in the number of
+ * tuples. It is required that n^k fits into a long.
+ */
+public class HashedRelation implements Relation {
+
+    /** Marks free slots of the table (keys are never negative). */
+    private static final long FREE = -1L;
+
+    /** Size of the universe. */
+    private final int n;
+
+    /** Arity of the relation. */
+    private final int arity;
+
+    /** The hash table with linear probing, its length is a power of two. */
+    private long[] table;
+
+    /** Number of tuples in the table. */
+    private int size;
+
+    /**
+     * Create an empty relation.
+     * @param n The size of the universe.
+     * @param arity The arity of the relation.
+     */
+    public HashedRelation(int n, int arity) {
+        if (Relations.cells(n, arity) == Long.MAX_VALUE) throw new IllegalArgumentException("Tuples of arity " + arity + " over " + n + " elements can not be packed into a long.");
+        this.n = n;
+        this.arity = arity;
+        this.table = new long[16];
+        Arrays.fill(table, FREE);
+    }
+
+    /** The packed key of a tuple, placeholders are replaced by x and y. */
+    private long key(int[] tuple, int x, int y) {
+        long key = 0;
+        for (int i = 0; i < arity; i++) {
+            int e = tuple[i];
+            key = key * n + (e >= 0 ? e : e == X ? x : y);
+        }
+        return key;
+    }
+
+    /** Slot at which the search for key starts. */
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (table.length - 1);
+    }
+
+    @Override
+    public int getArity() {
+        return arity;
+    }
+
+    @Override
+    public boolean contains(int[] arguments, int x, int y) {
+        long key = key(arguments, x, y);
+        int mask = table.length - 1;
+        for (int i = slot(key); table[i] != FREE; i = (i+1) & mask) {
+            if (table[i] == key) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void add(int... tuple) {
+        if (insert(key(tuple, 0, 0)) && 2 * size > table.length) grow();
+    }
+
+    /** Insert the key, returns false if it was already present. */
+    private boolean insert(long key) {
+        int mask = table.length - 1;
+        int i = slot(key);
+        while (table[i] != FREE) {
+            if (table[i] == key) return false;
+            i = (i+1) & mask;
+        }
+        table[i] = key;
+        size++;
+        return true;
+    }
+
+    /** Double the size of the table. */
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        Arrays.fill(table, FREE);
+        size = 0;
+        for (long key : old) if (key != FREE) insert(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** All keys in ascending (i.\,e., lexicographic) order. */
+    private long[] sortedKeys() {
+        long[] keys = new long[size];
+        int j = 0;
+        for (long key : table) if (key != FREE) keys[j++] = key;
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    @Override
+    public void forEach(Consumer<int[]> action) {
+        int[] tuple = new int[arity];
+        for (long key : sortedKeys()) {
+            long rest = key;
+            for (int i = arity-1; i >= 0; i--) {
+                tuple[i] = (int) (rest % n);
+                rest /= n;
+            }
+            action.accept(tuple);
+        }
+    }
+
+    /**
+     * If the relation is dense enough such that a bit set of n^k bits is not larger than the table, it is converted
+     * to a @see DenseRelation.
+     */
+    @Override
+    public Relation freeze() {
+        long cells = Relations.cells(n, arity);
+        if (cells > Integer.MAX_VALUE || cells > (long) table.length * Long.SIZE) return this;
+        DenseRelation dense = new DenseRelation(n, arity);
+        forEach(dense::add);
+        return dense;
+    }
+}
@@ -0,0 +1,66 @@
+package logic.relations;
+
+import java.util.function.Consumer;
+
+/**
+ * A relation of fixed arity over the universe {0,1,...,n-1} of a structure. Implementations differ in the memory they
+ * require, but all of them answer membership queries in (expected) constant or logarithmic time without allocation.
+ */
+public interface Relation {
+
+    /** Placeholders for the variables x and y in the arguments of @see #contains(int[], int, int). */
+    public static final int X = -1;
+    public static final int Y = -2;
+
+    /**
+     * The number of elements in each tuple of the relation.
+     * @return The arity.
+     */
+    public int getArity();
+
+    /**
+     * Test if the given tuple is in the relation. The length of the tuple has to match the arity.
+     * @param tuple The elements of the tuple.
+     * @return True, if the tuple is contained in the relation.
+     */
+    public default boolean contains(int... tuple) {
+        return contains(tuple, 0, 0);
+    }
+
+    /**
+     * Test if the tuple described by the arguments is in the relation, where the placeholders @see #X and @see #Y are
+     * replaced by the given elements. This allows to evaluate a literal like >R x 3 y< without creating the tuple.
+     * @param arguments Elements or placeholders, the length has to match the arity.
+     * @param x The element bound to x.
+     * @param y The element bound to y.
+     * @return True, if the tuple is contained in the relation.
+     */
+    public boolean contains(int[] arguments, int x, int y);
+
+    /**
+     * Add the given tuple to the relation. The length of the tuple has to match the arity.
+     * @param tuple The elements of the tuple.
+     */
+    public void add(int... tuple);
+
+    /**
+     * The number of tuples in the relation.
+     * @return The size of the relation.
+     */
+    public int size();
+
+    /**
+     * Calls the given action for every tuple in lexicographic order. The array passed to the action is reused.
+     * @param action The action to perform on each tuple.
+     */
+    public void forEach(Consumer<int[]> action);
+
+    /**
+     * Called once all tuples were added. An implementation may use this to build its lookup structure or to switch to
+     * a more suitable representation.
+     * @return A relation with the same tuples, possibly this.
+     */
+    public default Relation freeze() {
+        return this;
+    }
+}
@@ -0,0 +1,40 @@
+package logic.relations;
+
+/**
+ * Chooses the representation of relations.
+ */
+public class Relations {
+
+    /** Relations with at most this many possible tuples are always stored dense (this are 128 kB). */
+    private static final long DENSE_LIMIT = 1 << 20;
+
+    /**
+     * Create an empty relation whose representation fits its arity: unary relations and small relations are stored as
+     * bit set, larger ones as hash set of packed tuples, and if tuples can not be packed into a long as sorted array.
+     * Dense enough hash sets are turned into bit sets on @see Relation#freeze.
+     * @param n The size of the universe.
+     * @param arity The arity of the relation.
+     * @return An empty relation.
+     */
+    public static Relation create(int n, int arity) {
+        long cells = cells(n, arity);
+        if (arity == 1 || cells <= DENSE_LIMIT) return new DenseRelation(n, arity);
+        if (cells < Long.MAX_VALUE) return new HashedRelation(n, arity);
+        return new SortedRelation(n, arity);
+    }
+
+    /**
+     * The number of possible tuples n^arity.
+     * @param n The size of the universe.
+     * @param arity The arity of the tuples.
+     * @return n^arity, or Long.MAX_VALUE if this does not fit into a long.
+     */
+    public static long cells(int n, int arity) {
+        long cells = 1;
+        for (int i = 0; i < arity; i++) {
+            if (n != 0 && cells > (Long.MAX_VALUE - 1) / n) return Long.MAX_VALUE;
+            cells *= n;
+        }
+        return cells;
+    }
+}
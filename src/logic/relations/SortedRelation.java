@@ -0,0 +1,126 @@
+package logic.relations;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A sparse relation stored as lexicographically sorted array of tuples with an offset for every first element, such
+ * that a membership query is a binary search among the tuples starting with the same element. This representation
+ * is used if tuples can not be packed into a long. Tuples are collected unsorted and the array is built on
+ * @see #freeze (or on the first query).
+ */
+public class SortedRelation implements Relation {
+
+    /** Size of the universe. */
+    private final int n;
+
+    /** Arity of the relation. */
+    private final int arity;
+
+    /** The tuples, one after another. */
+    private int[] tuples;
+
+    /** Number of tuples in the array. */
+    private int size;
+
+    /** Tuples starting with element v are at positions offsets[v],...,offsets[v+1]-1, or null if not sorted yet. */
+    private volatile int[] offsets;
+
+    /**
+     * Create an empty relation.
+     * @param n The size of the universe.
+     * @param arity The arity of the relation.
+     */
+    public SortedRelation(int n, int arity) {
+        this.n = n;
+        this.arity = arity;
+        this.tuples = new int[16 * arity];
+    }
+
+    @Override
+    public int getArity() {
+        return arity;
+    }
+
+    @Override
+    public boolean contains(int[] arguments, int x, int y) {
+        int[] offsets = this.offsets;
+        if (offsets == null) offsets = sort();
+        int first = bind(arguments[0], x, y);
+        int low = offsets[first], high = offsets[first+1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(mid, arguments, x, y);
+            if (c == 0) return true;
+            if (c < 0) low = mid + 1; else high = mid - 1;
+        }
+        return false;
+    }
+
+    /** Lexicographically compare the i-th tuple of the array with the given one, in which placeholders are bound. */
+    private int compare(int i, int[] tuple, int x, int y) {
+        for (int j = 0; j < arity; j++) {
+            int c = Integer.compare(tuples[i*arity + j], bind(tuple[j], x, y));
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    /** The element e, or x or y if e is a placeholder. */
+    private static int bind(int e, int x, int y) {
+        return e >= 0 ? e : e == X ? x : y;
+    }
+
+    @Override
+    public synchronized void add(int... tuple) {
+        if ((size+1) * arity > tuples.length) tuples = Arrays.copyOf(tuples, tuples.length * 2);
+        System.arraycopy(tuple, 0, tuples, size * arity, arity);
+        size++;
+        offsets = null;
+    }
+
+    @Override
+    public int size() {
+        if (offsets == null) sort();
+        return size;
+    }
+
+    @Override
+    public void forEach(Consumer<int[]> action) {
+        if (offsets == null) sort();
+        int[] tuple = new int[arity];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(tuples, i * arity, tuple, 0, arity);
+            action.accept(tuple);
+        }
+    }
+
+    @Override
+    public Relation freeze() {
+        sort();
+        return this;
+    }
+
+    /** Sort the tuples, remove duplicates, and compute the offsets. */
+    private synchronized int[] sort() {
+        if (offsets != null) return offsets;
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Arrays.compare(tuples, a*arity, (a+1)*arity, tuples, b*arity, (b+1)*arity));
+        int[] sorted = new int[size * arity];
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            int from = order[i] * arity;
+            if (k > 0 && Arrays.equals(sorted, (k-1)*arity, k*arity, tuples, from, from+arity)) continue;
+            System.arraycopy(tuples, from, sorted, k * arity, arity);
+            k++;
+        }
+        tuples = sorted;
+        size = k;
+        int[] offsets = new int[n+1];
+        for (int i = 0; i < size; i++) offsets[tuples[i*arity]+1]++;
+        for (int v = 0; v < n; v++) offsets[v+1] += offsets[v];
+        this.offsets = offsets;
+        return offsets;
+    }
+}
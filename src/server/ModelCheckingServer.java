@@ -0,0 +1,287 @@
+package server;
+
+import io.BinaryStructure;
+import io.FormulaReader;
+import io.PaceReader;
+import jdrasil.algorithms.SmartDecomposer;
+import jdrasil.graph.TreeDecomposition;
+import logic.Structure;
+import solver.MSOStateVector;
+import solver.ModelChecker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long-running model checker that keeps structures and their tree decompositions in memory and answers queries
+ * over a local socket. The server listens either on a TCP port of the loopback interface, or on a Unix-domain socket
+ * (if the address is not a number). The protocol is line based, every request is answered by exactly one line:
+ *
+ * <pre>
+ * load name file [td]     load a binary structure or a .gr file (and optionally a .td file) -> ok
+ * unload name             remove a structure -> ok
+ * list                    -> ok name_1 name_2 ...
+ * check name [timeout]    followed by quantifiers and formulas and a line >end<
+ *                         -> sat value assignment | unsat | timeout
+ * quit                    close the connection
+ * </pre>
+ *
+ * Failing requests are answered with >error message<. Every connection and every dynamic program runs on its own
+ * (virtual if available) thread, the number of concurrently running dynamic programs is bounded.
+ */
+public class ModelCheckingServer {
+
+    /** The resident model checkers, by name of their structure. */
+    private final Map<String, ModelChecker> checkers;
+
+    /** Bounds the number of concurrently running dynamic programs. */
+    private final Semaphore runningChecks;
+
+    /** Timeout of a check in milliseconds, if the request does not specify one (0 = no timeout). */
+    private final long defaultTimeout;
+
+    /** If true, the states of the dynamic programs are stored outside of the heap. */
+    private final boolean offHeap;
+
+    /** If true, equal components of the states of the dynamic programs are stored once. */
+    private final boolean intern;
+
+    /** The pool on which all dynamic programs run in parallel, or null. */
+    private final ForkJoinPool pool;
+
+    /** Minimal size of subtrees that are evaluated in parallel. */
+    private final int subtreeThreshold;
+
+    /** If true, min queries are solved by branch and bound. */
+    private final boolean branchAndBound;
+
+    /** If positive, waiting state vectors are spilled to temporary files while more states are alive. */
+    private final long spillBudget;
+
+    /** Executes connections and dynamic programs. */
+    private final ExecutorService executor;
+
+    /**
+     * Create a server without structures.
+     * @param maxChecks The maximum number of dynamic programs that run at the same time.
+     * @param defaultTimeout Timeout of a check in milliseconds, 0 for no timeout.
+     * @param offHeap If true, the states of the dynamic programs are stored outside of the heap.
+     * @param intern If true, equal components of the states of the dynamic programs are stored once.
+     * @param threads The number of threads of the dynamic programs, shared by all of them.
+     * @param subtreeThreshold The minimal number of bags of subtrees that are evaluated in parallel.
+     * @param branchAndBound If true, min queries are solved by branch and bound.
+     * @param spillBudget If positive, the number of live states of a query above which states are spilled to temporary files.
+     */
+    public ModelCheckingServer(int maxChecks, long defaultTimeout, boolean offHeap, boolean intern, int threads, int subtreeThreshold, boolean branchAndBound, long spillBudget) {
+        this.checkers = new ConcurrentHashMap<>();
+        this.runningChecks = new Semaphore(maxChecks, true);
+        this.defaultTimeout = defaultTimeout;
+        this.offHeap = offHeap;
+        this.intern = intern;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.subtreeThreshold = subtreeThreshold;
+        this.branchAndBound = branchAndBound;
+        this.spillBudget = spillBudget;
+        this.executor = createExecutor();
+    }
+
+    /**
+     * Virtual threads are only available since Java 21, on older runtimes we fall back to a cached thread pool.
+     * @return An executor that starts a new thread for every task.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Make a structure available under the given name.
+     * @param name The name under which queries refer to the structure.
+     * @param structure The structure.
+     * @param td A tree decomposition of the graph of the structure.
+     */
+    public void register(String name, Structure structure, TreeDecomposition<Integer> td) {
+        ModelChecker checker = new ModelChecker(structure, td);
+        checker.setOffHeap(offHeap);
+        checker.setInterning(intern);
+        checker.setPool(pool);
+        checker.setSubtreeThreshold(subtreeThreshold);
+        checker.setBranchAndBound(branchAndBound);
+        checker.setSpillBudget(spillBudget);
+        checkers.put(name, checker);
+    }
+
+    /**
+     * Accept connections on the given address until the process is terminated. A number is interpreted as TCP port on
+     * the loopback interface, everything else as path of a Unix-domain socket.
+     * @param address The port or socket file.
+     * @throws IOException If the socket can not be opened.
+     */
+    public void serve(String address) throws IOException {
+        ServerSocketChannel server;
+        SocketAddress local;
+        if (address.matches("\\d+")) {
+            server = ServerSocketChannel.open();
+            local = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        } else {
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            Files.deleteIfExists(Paths.get(address));
+            local = UnixDomainSocketAddress.of(address);
+        }
+        try (ServerSocketChannel channel = server) {
+            channel.bind(local);
+            System.out.println("listening on " + address);
+            while (true) {
+                SocketChannel client = channel.accept();
+                executor.submit(() -> handle(client));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Answer the requests of one connection until it is closed. */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                String[] ll = line.trim().split("\\s+");
+                if (ll[0].isEmpty() || ll[0].equals("c")) continue;
+                if (ll[0].equals("quit")) break;
+                String response;
+                try {
+                    response = respond(ll, in);
+                } catch (Exception e) {
+                    response = "error " + e.getMessage();
+                }
+                out.write(response);
+                out.newLine();
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client disconnected, nothing left to answer
+        }
+    }
+
+    /**
+     * Compute the response to a single request.
+     * @param ll The tokens of the request line.
+     * @param in The connection, from which the formula of a check is read.
+     * @return The response line.
+     */
+    private String respond(String[] ll, BufferedReader in) throws Exception {
+        switch (ll[0]) {
+            case "load":
+                if (ll.length < 3) throw new IllegalArgumentException("usage: load name file [td]");
+                load(ll[1], Paths.get(ll[2]), ll.length > 3 ? Paths.get(ll[3]) : null);
+                return "ok";
+            case "unload":
+                if (ll.length < 2 || checkers.remove(ll[1]) == null) throw new IllegalArgumentException("unknown structure");
+                return "ok";
+            case "list":
+                return "ok " + String.join(" ", new TreeMap<>(checkers).keySet());
+            case "check":
+                if (ll.length < 2) throw new IllegalArgumentException("usage: check name [timeout]");
+                return check(ll[1], ll.length > 2 ? Long.parseLong(ll[2]) : defaultTimeout, in);
+            default:
+                throw new IllegalArgumentException("unknown request " + ll[0]);
+        }
+    }
+
+    /** Load a structure (binary or .gr) and compute (or read) its tree decomposition. */
+    private void load(String name, Path file, Path decomposition) throws Exception {
+        Structure structure = file.toString().endsWith(".gr") ? PaceReader.readGraph(file) : BinaryStructure.read(file);
+        TreeDecomposition<Integer> td = decomposition != null
+                ? PaceReader.readDecomposition(decomposition, structure.getGraph())
+                : new SmartDecomposer<>(structure.getGraph()).call();
+        register(name, structure, td);
+    }
+
+    /** Read the formula of a check request up to the line >end< and run the dynamic program on its own thread. */
+    private String check(String name, long timeout, BufferedReader in) throws Exception {
+        ModelChecker checker = checkers.get(name);
+        FormulaReader formula = new FormulaReader(checker != null ? checker.getStructure() : new Structure());
+        String error = null;
+        String line;
+        while ( (line = in.readLine()) != null && !line.trim().equals("end") ) {
+            String[] ll = line.trim().split("\\s+");
+            if (ll[0].isEmpty() || ll[0].equals("c") || error != null) continue;
+            try {
+                if (!formula.parse(ll, in::readLine)) error = "unknown declaration " + line;
+            } catch (Exception e) {
+                error = "malformed declaration " + line;
+            }
+        }
+        // the formula is consumed completely before errors are reported, such that the connection stays usable
+        if (line == null) throw new IOException("connection closed");
+        if (checker == null) throw new IllegalArgumentException("unknown structure " + name);
+        if (error != null) throw new IllegalArgumentException(error);
+
+        // the timeout starts once the check holds a permit, the time it waits for one is not counted
+        CountDownLatch started = new CountDownLatch(1);
+        Future<MSOStateVector.MSOState> result = executor.submit(() -> {
+            try {
+                runningChecks.acquire();
+            } finally {
+                started.countDown();
+            }
+            try {
+                return checker.check(formula.getQuantifiers(), formula.getFormulas());
+            } finally {
+                runningChecks.release();
+            }
+        });
+        MSOStateVector.MSOState state;
+        try {
+            started.await();
+            state = timeout > 0 ? result.get(timeout, TimeUnit.MILLISECONDS) : result.get();
+        } catch (TimeoutException | CancellationException e) {
+            result.cancel(true);
+            return "timeout";
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(String.valueOf(e.getCause()));
+        }
+        if (state == null) return "unsat";
+        return "sat " + state.value + " " + state.assignment;
+    }
+}
@@ -0,0 +1,121 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * Hash-consing of the components of states. Many states of a bag differ in the slots of only one logical object, while
+ * the components of all other objects are equal. The interner maps equal components (of the same logical object) to
+ * one canonical array, such that they are stored once and can be compared by reference.
+ *
+ * Canonical arrays are never modified, states copy a component before they write to it.
+ *
+ * Interning costs a lookup per component and pays only if components are actually shared. Hence, the interner counts
+ * how often it finds a canonical instance, and @see #pays reports whether it is worth to continue.
+ */
+final class ComponentInterner {
+
+    /** Initial number of cells, a power of two. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Number of lookups after which @see #pays decides based on the observed hits. */
+    private static final int SAMPLE = 4096;
+
+    /** The canonical components, null marks a free cell. */
+    private long[][] cells;
+
+    /** The logical object of the component in the same cell. */
+    private int[] objects;
+
+    /** The hash of the component in the same cell. */
+    private int[] hashes;
+
+    /** Number of canonical components. */
+    private int size;
+
+    /** Number of lookups and number of lookups that found an equal component since the last clear. */
+    private int lookups, hits;
+
+    ComponentInterner() {
+        release();
+    }
+
+    /**
+     * The canonical instance of a component.
+     * @param object The index of the logical object the component belongs to.
+     * @param component The words of the component.
+     * @param hash Arrays.hashCode of the component.
+     * @return An array equal to component, which is component itself if no equal array was interned before.
+     */
+    long[] intern(int object, long[] component, int hash) {
+        hash = 31 * hash + object;
+        lookups++;
+        int mask = cells.length - 1;
+        int cell = mix(hash) & mask;
+        while (cells[cell] != null) {
+            if (cells[cell] == component) return component;
+            if (hashes[cell] == hash && objects[cell] == object && Arrays.equals(cells[cell], component)) {
+                hits++;
+                return cells[cell];
+            }
+            cell = (cell + 1) & mask;
+        }
+        cells[cell] = component;
+        objects[cell] = object;
+        hashes[cell] = hash;
+        size++;
+        if (2 * size > cells.length) grow();
+        return component;
+    }
+
+    /**
+     * Check whether interning saves memory, i.\,e., whether at least half of the lookups found an equal component.
+     * @return True, if components should be interned (always true during the first lookups).
+     */
+    boolean pays() {
+        return lookups < SAMPLE || 2 * hits >= lookups;
+    }
+
+    /** Double the number of cells. */
+    private void grow() {
+        long[][] oldCells = cells;
+        int[] oldObjects = objects;
+        int[] oldHashes = hashes;
+        cells = new long[2 * oldCells.length][];
+        objects = new int[cells.length];
+        hashes = new int[cells.length];
+        int mask = cells.length - 1;
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldCells[i] == null) continue;
+            int cell = mix(oldHashes[i]) & mask;
+            while (cells[cell] != null) cell = (cell + 1) & mask;
+            cells[cell] = oldCells[i];
+            objects[cell] = oldObjects[i];
+            hashes[cell] = oldHashes[i];
+        }
+    }
+
+    /** Spread the bits of a hash code for linear probing. */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Forget all canonical components (the memory of the cells is kept), states that use them are not affected. */
+    void clear() {
+        lookups = 0;
+        hits = 0;
+        if (size == 0) return;
+        Arrays.fill(cells, null);
+        size = 0;
+    }
+
+    /** Forget all canonical components and free the memory of the cells. */
+    void release() {
+        this.cells = new long[INITIAL_CAPACITY][];
+        this.objects = new int[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.lookups = 0;
+        this.hits = 0;
+    }
+}
@@ -0,0 +1,160 @@
+package solver;
+
+import logic.LogicalObject;
+
+import java.util.Arrays;
+
+/**
+ * Finds the dominated states of a state vector, @see MSOStateVector#reduce. A state is dominated by another one if both
+ * have equal slots for all unordered logical objects, the other one dominates it with respect to all ordered objects
+ * (@see LogicalObject#dominates), and its value is not larger. Such a state can never lead to a better solution than
+ * the other one.
+ *
+ * The states are grouped by their unordered slots in a hash table and sorted by value within a group, such that a
+ * state is only compared with the undominated states of its group that come before it. These states form the front
+ * of the group, which is capped at @see #MAX_FRONT states: once the front is full, the remaining states of the group
+ * are only compared with it and are kept if they are not dominated by it, such that a group costs linear time.
+ */
+final class Dominance {
+
+    /** The maximal number of undominated states of a group that later states are compared with. */
+    static final int MAX_FRONT = 256;
+
+    /** The layout of the states. */
+    private final StateLayout layout;
+
+    /** The logical objects whose slots are ordered. */
+    private final LogicalObject[] ordered;
+
+    /** The indices of the logical objects whose slots must be equal. */
+    private final int[] unordered;
+
+    /** The number of words of the unordered slots. */
+    private final int width;
+
+    /**
+     * Prepare the comparison of states.
+     * @param logicalObjects The logical objects of the states, some of which must be ordered.
+     * @param layout The layout of the states.
+     */
+    Dominance(LogicalObject[] logicalObjects, StateLayout layout) {
+        this.layout = layout;
+        this.ordered = Arrays.stream(logicalObjects).filter(LogicalObject::isOrdered).toArray(LogicalObject[]::new);
+        int[] unordered = new int[logicalObjects.length];
+        int count = 0, width = 0;
+        for (int j = 0; j < logicalObjects.length; j++) {
+            if (logicalObjects[j].isOrdered()) continue;
+            unordered[count++] = j;
+            width += layout.size[j];
+        }
+        this.unordered = Arrays.copyOf(unordered, count);
+        this.width = width;
+    }
+
+    /**
+     * Find the dominated states. Of states that dominate each other, i.\,e., that have equal slots and values, the first
+     * one is kept.
+     * @param states The states.
+     * @return For every state, whether it is dominated.
+     */
+    boolean[] dominated(MSOStateVector.MSOState[] states) {
+        int n = states.length;
+
+        // group the states by their unordered slots, groups are numbered in the order of their first states
+        long[] keys = new long[n * width];
+        int[] hashes = new int[n];
+        int[] group = new int[n];
+        int[] cells = new int[Integer.highestOneBit(Math.max(1, n)) * 4];
+        int mask = cells.length - 1;
+        int groups = 0;
+        for (int k = 0; k < n; k++) {
+            project(states[k], keys, k * width);
+            int hash = 1;
+            for (int w = k * width; w < (k + 1) * width; w++) hash = 31 * hash + Long.hashCode(keys[w]);
+            hashes[k] = hash;
+            int cell = mix(hash) & mask;
+            while (cells[cell] != 0 && !sameKey(keys, hashes, cells[cell] - 1, k)) cell = (cell + 1) & mask;
+            if (cells[cell] == 0) {
+                cells[cell] = k + 1;
+                group[k] = groups++;
+            } else {
+                group[k] = group[cells[cell] - 1];
+            }
+        }
+
+        // sort the states by group, value, and position
+        int[] start = new int[groups + 1];
+        for (int k = 0; k < n; k++) start[group[k] + 1]++;
+        for (int g = 0; g < groups; g++) start[g + 1] += start[g];
+        int[] fill = Arrays.copyOf(start, groups);
+        long[] sorted = new long[n];
+        for (int k = 0; k < n; k++) sorted[fill[group[k]]++] = ((long) states[k].value << 32) | k;
+        for (int g = 0; g < groups; g++) Arrays.sort(sorted, start[g], start[g + 1]);
+
+        // within a group, compare every state with the undominated states of smaller or equal value
+        boolean[] dominated = new boolean[n];
+        int[] front = new int[MAX_FRONT];
+        for (int g = 0; g < groups; g++) {
+            int size = 0;
+            for (int i = start[g]; i < start[g + 1]; i++) {
+                int k = (int) sorted[i];
+                boolean keep = true;
+                for (int f = 0; f < size; f++) {
+                    int other = front[f];
+                    if (dominates(states[other], states[k])) {
+                        keep = false;
+                        break;
+                    }
+                    if (states[other].value == states[k].value && dominates(states[k], states[other])) {
+                        // equal values, the later state may dominate an earlier one
+                        dominated[other] = true;
+                        front[f--] = front[--size];
+                    }
+                }
+                if (!keep) {
+                    dominated[k] = true;
+                } else if (size < MAX_FRONT) {
+                    front[size++] = k;
+                }
+            }
+        }
+        return dominated;
+    }
+
+    /**
+     * Check whether a state dominates another one with the same unordered slots.
+     * @param a The dominating state.
+     * @param b The dominated state.
+     * @return True, if a has no larger value and dominates b with respect to all ordered logical objects.
+     */
+    private boolean dominates(MSOStateVector.MSOState a, MSOStateVector.MSOState b) {
+        if (a.value > b.value) return false;
+        for (LogicalObject lo : ordered) {
+            if (!lo.dominates(a, b)) return false;
+        }
+        return true;
+    }
+
+    /** Write the unordered slots of a state to keys[at,...,at+width). */
+    private void project(MSOStateVector.MSOState state, long[] keys, int at) {
+        for (int j : unordered) {
+            if (layout.interned[j]) {
+                System.arraycopy(state.getComponent(layout.start[j]), 0, keys, at, layout.size[j]);
+                at += layout.size[j];
+            } else {
+                for (int w = layout.start[j]; w < layout.start[j] + layout.size[j]; w++) keys[at++] = state.getWord(w);
+            }
+        }
+    }
+
+    /** Check whether states k and l have equal unordered slots. */
+    private boolean sameKey(long[] keys, int[] hashes, int k, int l) {
+        return hashes[k] == hashes[l] && Arrays.equals(keys, k * width, (k + 1) * width, keys, l * width, (l + 1) * width);
+    }
+
+    /** Spread the bits of a hash code, such that linear probing works with Arrays.hashCode. */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,638 @@
+package solver;
+
+import jdrasil.graph.Bag;
+import jdrasil.graph.Graph;
+import jdrasil.graph.TreeDecomposition;
+import jdrasil.workontd.StateVector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the dynamic program over a tree decomposition. The decomposition is not converted into a nice one, instead, the
+ * operations of a very nice decomposition are derived while the tree is walked: a leaf introduces its vertices, the
+ * vector of a child is moved to the bag of its parent by edge and forget operations (the edges of a vertex are
+ * handled right before it is forgotten, as by Jdrasil) followed by introduce operations, and the vectors of the
+ * children of a bag are joined at this bag. The callbacks are those of @see StateVector. The tree index is computed
+ * once and stored in an array, @see TreeIndex, and the decomposition is only read.
+ *
+ * The root and the order of the children are chosen to keep few states alive at the same time (in the manner of
+ * Sethi and Ullman): a bag with b vertices is estimated to hold 2^b states, the child whose subtree needs most memory
+ * is evaluated first, as every later child is evaluated while the joined vector of the previous ones waits, and the
+ * root is the bag for which the estimated peak of the whole run is minimal. Waiting vectors free their buffers, and
+ * with a budget for the live states, they are spilled to temporary files, @see #setSpillBudget.
+ *
+ * The children of a bag are independent subproblems, hence, if their subtrees have at least a given number of
+ * operations, the later children are evaluated as tasks on a fork-join pool while the current thread evaluates the
+ * first one. Apart from that, subtrees are evaluated with an explicit stack, such that deep decompositions do not
+ * overflow the call stack. The result does not depend on the pool.
+ */
+public class DynamicProgram {
+
+    /** Creates the state vectors of the leafs. */
+    private final MSOStateVectorFactory factory;
+
+    /** The graph of the decomposition, its edges are handled at edge operations. */
+    private final Graph<Integer> graph;
+
+    /** The width of the decomposition. */
+    private final int tw;
+
+    /** The bags of the decomposition ordered by id, followed by an empty bag if the decomposition is a forest. */
+    private final Bag<Integer>[] bags;
+
+    /** The vertices of every bag in ascending order. */
+    private final int[][] vertices;
+
+    /** For every bag, a bag that follows the vertices while its vector is introduced or moved to the parent. */
+    private final Bag<Integer>[] work;
+
+    /** The root of the walk. */
+    private final int root;
+
+    /** The children of every bag, the one with the largest estimated peak first. */
+    private final int[][] children;
+
+    /** The number of operations in the subtree of every bag, including the ones that move it to its parent. */
+    private final long[] operations;
+
+    /** The tree index of all vertices. */
+    private final TreeIndex treeIndex;
+
+    /** The pool on which subtrees are evaluated, or null if everything runs in the calling thread. */
+    private final ForkJoinPool pool;
+
+    /** Subtrees must have at least this many operations to be evaluated in parallel. */
+    private final int threshold;
+
+    /** The number of states of all vectors that exist. */
+    private final AtomicLong live;
+
+    /** The maximum of @see #live over the run. */
+    private final AtomicLong peak;
+
+    /** Set if the run failed or was interrupted, such that running tasks stop at their next operation. */
+    private volatile boolean cancelled;
+
+    /** If positive, waiting vectors are spilled to temporary files while more states are alive, @see #setSpillBudget. */
+    private long spillBudget;
+
+    /** The vectors that wait for their sibling at a join bag, per thread, as only their thread may spill them. */
+    private final ThreadLocal<List<MSOStateVector>> waiting = ThreadLocal.withInitial(ArrayList::new);
+
+    /** The vectors that were spilled, whose files are deleted if the run fails. */
+    private final Set<MSOStateVector> spilled = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Prepare the walk over the decomposition: choose the root and the order of the children, and compute the tree index.
+     * @param factory Creates the state vectors of the leafs.
+     * @param td The tree decomposition, which is not modified.
+     * @param pool The pool on which subtrees are evaluated, or null to run sequentially.
+     * @param threshold The minimal number of operations of subtrees that are evaluated in parallel.
+     */
+    public DynamicProgram(MSOStateVectorFactory factory, TreeDecomposition<Integer> td, ForkJoinPool pool, int threshold) {
+        this.factory = factory;
+        this.graph = td.getGraph();
+        this.tw = td.getWidth();
+        this.pool = pool;
+        this.threshold = threshold;
+        this.live = new AtomicLong();
+        this.peak = new AtomicLong();
+
+        // number the bags by id, such that the walk does not depend on hash codes
+        List<Bag<Integer>> list = new ArrayList<>(td.getBags());
+        list.sort(null);
+        Map<Bag<Integer>, Integer> number = new HashMap<>();
+        for (int i = 0; i < list.size(); i++) number.put(list.get(i), i);
+        int[][] neighbors = new int[list.size()][];
+        for (int i = 0; i < list.size(); i++) {
+            neighbors[i] = td.getNeighborhood(list.get(i)).stream().mapToInt(number::get).sorted().toArray();
+        }
+
+        // choose a root for every tree of the decomposition, several trees are joined at an additional empty bag
+        double[] weight = new double[list.size()];
+        for (int i = 0; i < weight.length; i++) weight[i] = Math.scalb(1.0, list.get(i).vertices.size());
+        List<Integer> roots = chooseRoots(neighbors, weight);
+        int m = roots.size() == 1 ? list.size() : list.size() + 1;
+        TreeDecomposition<Integer> scratch = new TreeDecomposition<>(graph);
+        this.bags = newBags(m);
+        this.vertices = new int[m][];
+        this.work = newBags(m);
+        for (int i = 0; i < m; i++) {
+            bags[i] = i < list.size() ? list.get(i) : scratch.createBag(new HashSet<>());
+            vertices[i] = bags[i].vertices.stream().mapToInt(Integer::intValue).sorted().toArray();
+            work[i] = scratch.createBag(new HashSet<>());
+        }
+        if (m > list.size()) {
+            neighbors = Arrays.copyOf(neighbors, m);
+            neighbors[m - 1] = roots.stream().mapToInt(Integer::intValue).toArray();
+            for (int r : roots) neighbors[r] = append(neighbors[r], m - 1);
+            weight = Arrays.copyOf(weight, m);
+            weight[m - 1] = 1;
+            this.root = m - 1;
+        } else {
+            this.root = roots.get(0);
+        }
+
+        // orient the tree from the root and order the children by their estimated peak
+        int[] parent = new int[m];
+        int[] order = orient(neighbors, root, parent);
+        double[] lift = new double[m];
+        estimate(neighbors, weight, order, parent, lift);
+        this.children = new int[m][];
+        for (int v : order) {
+            children[v] = Arrays.stream(neighbors[v]).filter(w -> w != parent[v]).boxed()
+                    .sorted((a, b) -> lift[a] != lift[b] ? Double.compare(lift[b], lift[a]) : Integer.compare(a, b))
+                    .mapToInt(Integer::intValue).toArray();
+        }
+
+        // the tree index: a vertex gets a free position at the topmost bag that contains it
+        int n = 0;
+        for (int[] bag : vertices) for (int v : bag) n = Math.max(n, v + 1);
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        for (int v : order) {
+            boolean[] used = new boolean[vertices[v].length];
+            for (int w : vertices[v]) if (index[w] >= 0 && index[w] < used.length) used[index[w]] = true;
+            int free = 0;
+            for (int w : vertices[v]) {
+                if (index[w] >= 0) continue;
+                while (used[free]) free++;
+                index[w] = free;
+                used[free] = true;
+            }
+        }
+        this.treeIndex = new TreeIndex(index);
+
+        // the number of operations in every subtree
+        this.operations = new long[m];
+        for (int i = order.length - 1; i >= 0; i--) {
+            int v = order[i];
+            long count = children[v].length == 0 ? vertices[v].length + 1 : children[v].length - 1;
+            for (int c : children[v]) count += operations[c];
+            int[] target = parent[v] < 0 ? new int[0] : vertices[parent[v]];
+            Set<Integer> bag = new HashSet<>();
+            for (int w : vertices[v]) bag.add(w);
+            for (int w : vertices[v]) {
+                if (Arrays.binarySearch(target, w) >= 0) continue;
+                for (Integer x : graph.getNeighborhood(w)) if (bag.contains(x)) count++;
+                bag.remove(w);
+                count++;
+            }
+            for (int w : target) if (Arrays.binarySearch(vertices[v], w) < 0) count++;
+            operations[v] = count;
+        }
+    }
+
+    /** Create an array of bags, generic arrays can only be created raw. */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static Bag<Integer>[] newBags(int length) {
+        return new Bag[length];
+    }
+
+    /** Create an array of subtree tasks, generic arrays can only be created raw. */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static ForkJoinTask<MSOStateVector>[] newTasks(int length) {
+        return new ForkJoinTask[length];
+    }
+
+    /**
+     * Append a value to an array.
+     * @param array The array.
+     * @param value The value.
+     * @return A copy of the array with the value at the end.
+     */
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    /**
+     * Orient the tree of a forest that contains a root, the other trees are ignored.
+     * @param neighbors The neighbors of every node.
+     * @param root The root.
+     * @param parent Receives the parent of every node of the tree (-1 for root).
+     * @return The nodes of the tree, every node after its parent.
+     */
+    private static int[] orient(int[][] neighbors, int root, int[] parent) {
+        int[] order = new int[neighbors.length];
+        int size = 0;
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(root);
+        parent[root] = -1;
+        while (!stack.isEmpty()) {
+            int v = stack.pop();
+            order[size++] = v;
+            for (int w : neighbors[v]) {
+                if (w == parent[v]) continue;
+                parent[w] = v;
+                stack.push(w);
+            }
+        }
+        return Arrays.copyOf(order, size);
+    }
+
+    /**
+     * The estimated peak of the states alive while a bag is evaluated. The child with the largest peak runs first, every
+     * further child runs while the joined vector waits, and a join holds three vectors.
+     * @param weight The estimated number of states of the bag.
+     * @param first The largest peak of a child (including moving it to the bag), 0 for leafs.
+     * @param second The second largest one, 0 if there is at most one child.
+     * @return The estimated peak.
+     */
+    private static double need(double weight, double first, double second) {
+        if (first == 0) return 2 * weight;
+        if (second == 0) return Math.max(first, 2 * weight);
+        return Math.max(first, Math.max(weight + second, 3 * weight));
+    }
+
+    /**
+     * Compute for every node of a tree the estimated peak of its subtree, including moving its vector to the parent.
+     * @param neighbors The neighbors of every node.
+     * @param weight The estimated number of states of every bag.
+     * @param order The nodes of the tree, every node after its parent.
+     * @param parent The parent of every node.
+     * @param lift Receives the estimated peaks.
+     */
+    private static void estimate(int[][] neighbors, double[] weight, int[] order, int[] parent, double[] lift) {
+        for (int i = order.length - 1; i >= 0; i--) {
+            int v = order[i];
+            double first = 0, second = 0;
+            for (int c : neighbors[v]) {
+                if (c == parent[v]) continue;
+                if (lift[c] > first) {
+                    second = first;
+                    first = lift[c];
+                } else if (lift[c] > second) {
+                    second = lift[c];
+                }
+            }
+            double need = need(weight[v], first, second);
+            lift[v] = parent[v] < 0 ? need : Math.max(need, weight[v] + weight[parent[v]]);
+        }
+    }
+
+    /**
+     * Choose the root of every tree of the decomposition, i.\,e., the bag for which the estimated peak of the states
+     * alive over the whole run is minimal. The peaks of all roots are computed by rerooting: a first pass computes the
+     * peak of every subtree towards an arbitrary root, a second pass the peak of the remaining tree towards every node.
+     * @param neighbors The neighbors of every node.
+     * @param weight The estimated number of states of every bag.
+     * @return One root per tree, in the order of their smallest nodes.
+     */
+    private static List<Integer> chooseRoots(int[][] neighbors, double[] weight) {
+        int m = neighbors.length;
+        int[] parent = new int[m];
+        Arrays.fill(parent, -2);
+        double[] down = new double[m];
+        double[] up = new double[m];
+        List<Integer> roots = new ArrayList<>();
+        for (int start = 0; start < m; start++) {
+            if (parent[start] != -2) continue;
+            int[] order = orient(neighbors, start, parent);
+            estimate(neighbors, weight, order, parent, down);
+            int best = start;
+            double bestNeed = Double.POSITIVE_INFINITY;
+            for (int v : order) {
+                // the three largest peaks of the neighbors, seen from v
+                double[] top = new double[3];
+                int[] from = {-1, -1, -1};
+                for (int w : neighbors[v]) {
+                    double value = w == parent[v] ? up[v] : down[w];
+                    for (int k = 0; k < 3; k++) {
+                        if (value <= top[k]) continue;
+                        for (int l = 2; l > k; l--) {
+                            top[l] = top[l-1];
+                            from[l] = from[l-1];
+                        }
+                        top[k] = value;
+                        from[k] = w;
+                        break;
+                    }
+                }
+                double need = need(weight[v], top[0], top[1]);
+                if (need < bestNeed) {
+                    bestNeed = need;
+                    best = v;
+                }
+                // the peak of the tree without the subtree of c, seen from c
+                for (int c : neighbors[v]) {
+                    if (c == parent[v]) continue;
+                    double first = from[0] == c ? top[1] : top[0];
+                    double second = from[0] == c || from[1] == c ? top[2] : top[1];
+                    up[c] = Math.max(need(weight[v], first, second), weight[v] + weight[c]);
+                }
+            }
+            roots.add(best);
+        }
+        return roots;
+    }
+
+    /**
+     * Run the dynamic program.
+     * @return The state vector of the root, whose bag is empty.
+     */
+    public MSOStateVector run() {
+        try {
+            MSOStateVector vector = evaluate(root);
+            return lift(root, new int[0], vector);
+        } catch (RuntimeException | Error e) {
+            cancelled = true;
+            for (MSOStateVector vector : spilled) if (vector.isSpilled()) vector.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Set a budget for the live states of the run. While more states are alive, the vectors that wait for their sibling
+     * at a join bag are spilled to temporary files (@see MSOStateVector#spill), and so are both sides of a join, which
+     * then reads them back partition by partition. The run is slower, but only the states of the current operations
+     * need to fit into the memory. The value of the result does not depend on the budget.
+     * @param spillBudget The number of live states, or 0 to keep all states in memory.
+     */
+    public void setSpillBudget(long spillBudget) {
+        this.spillBudget = spillBudget;
+    }
+
+    /**
+     * Cancel the run from another thread, it fails with a CancellationException at its next operation.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * The maximal number of states that were alive at the same time (after an operation), for statistics.
+     * @return The peak number of states.
+     */
+    public long getPeakStates() {
+        return peak.get();
+    }
+
+    /**
+     * A bag on the stack of @see #evaluate.
+     */
+    private static final class Frame {
+
+        /** The bag. */
+        final int node;
+
+        /** The next child to evaluate. */
+        int next;
+
+        /** The join of the vectors of the evaluated children, moved to the bag. */
+        MSOStateVector joined;
+
+        /** The tasks that evaluate children in parallel, or null. */
+        ForkJoinTask<MSOStateVector>[] tasks;
+
+        Frame(int node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * Evaluate the subtree of a bag in post-order. Children that are worth it are evaluated in parallel and joined when
+     * their turn comes.
+     * @param top The root of the subtree.
+     * @return The state vector of top.
+     */
+    private MSOStateVector evaluate(int top) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(top));
+        while (true) {
+            Frame frame = frames.peek();
+            int[] below = children[frame.node];
+            if (frame.next == 0 && isParallel(below)) {
+                frame.tasks = newTasks(below.length);
+                for (int i = 1; i < below.length; i++) {
+                    if (operations[below[i]] < threshold) continue;
+                    int child = below[i];
+                    frame.tasks[i] = ForkJoinTask.adapt(() -> subtree(child, frame.node));
+                    if (inPool()) frame.tasks[i].fork();
+                    else pool.execute(frame.tasks[i]);
+                }
+            }
+            if (frame.next < below.length) {
+                int i = frame.next++;
+                if (frame.tasks != null && frame.tasks[i] != null) {
+                    combine(frame, await(frame.tasks[i]));
+                } else {
+                    frames.push(new Frame(below[i]));
+                }
+                continue;
+            }
+
+            // all children are evaluated
+            frames.pop();
+            MSOStateVector vector = frame.joined != null ? frame.joined : leaf(frame.node);
+            if (frames.isEmpty()) return vector;
+            Frame parent = frames.peek();
+            combine(parent, lift(frame.node, vertices[parent.node], vector));
+        }
+    }
+
+    /**
+     * Evaluate the subtree of a child and move its vector to the parent, as task.
+     * @param child The child.
+     * @param parent Its parent.
+     * @return The vector for the bag of the parent, which waits for its join.
+     */
+    private MSOStateVector subtree(int child, int parent) {
+        try {
+            MSOStateVector vector = lift(child, vertices[parent], evaluate(child));
+            vector.trim();
+            if (isOverBudget()) spill(vector); // the result waits outside of any thread
+            return vector;
+        } catch (RuntimeException | Error e) {
+            cancelled = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Join the vector of the next child into the vector of a bag. If further children follow, the joined vector waits
+     * for them and frees its buffer.
+     * @param frame The bag.
+     * @param vector The vector of the child, moved to the bag.
+     */
+    private void combine(Frame frame, MSOStateVector vector) {
+        Bag<Integer> bag = bags[frame.node];
+        if (frame.joined == null) {
+            frame.joined = vector;
+        } else {
+            waiting.get().remove(frame.joined);
+            if (isOverBudget()) {
+                spill(frame.joined);
+                spill(vector);
+            }
+            frame.joined = step(frame.joined, bag, vector.size(), x -> x.join(bag, vector, treeIndex));
+        }
+        if (frame.next < children[frame.node].length) {
+            frame.joined.trim();
+            if (spillBudget > 0) waiting.get().add(frame.joined);
+        }
+    }
+
+    /**
+     * Check whether more states are alive than the budget allows, @see #setSpillBudget.
+     * @return True, if states should be spilled.
+     */
+    private boolean isOverBudget() {
+        return spillBudget > 0 && live.get() > spillBudget;
+    }
+
+    /**
+     * Spill a vector to temporary files, its states are no longer alive.
+     * @param vector The vector.
+     */
+    private void spill(MSOStateVector vector) {
+        if (vector.isSpilled()) return;
+        long size = vector.size();
+        spilled.add(vector);
+        vector.spill();
+        account(-size);
+    }
+
+    /**
+     * Decide whether some children of a bag are evaluated in parallel.
+     * @param below The children of the bag.
+     * @return True, if the bag has several children and the subtree of the first one has at least @see #threshold
+     *         operations (the others are checked individually).
+     */
+    private boolean isParallel(int[] below) {
+        return pool != null && below.length > 1 && operations[below[0]] >= threshold;
+    }
+
+    /**
+     * Check whether the current thread is a worker of the pool, which forks tasks and helps while it waits for them.
+     * @return True, if this thread belongs to @see #pool.
+     */
+    private boolean inPool() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool;
+    }
+
+    /**
+     * Wait for a subtree task. Threads outside of the pool wait interruptibly, such that an interrupt cancels the
+     * whole run; failures of a task are rethrown in the waiting thread.
+     * @param task The task.
+     * @return The state vector it computed.
+     */
+    private MSOStateVector await(ForkJoinTask<MSOStateVector> task) {
+        try {
+            if (inPool()) return task.join();
+            return task.get();
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new CancellationException("The dynamic program was interrupted.");
+        } catch (ExecutionException e) {
+            cancelled = true;
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Create the vector of a leaf and introduce its vertices.
+     * @param node The leaf.
+     * @return The vector for its bag.
+     */
+    private MSOStateVector leaf(int node) {
+        MSOStateVector vector = (MSOStateVector) factory.createStateVectorForLeaf(tw);
+        account(vector.size());
+        Bag<Integer> bag = work[node];
+        bag.vertices.clear();
+        for (int v : vertices[node]) {
+            bag.vertices.add(v);
+            vector = step(vector, bag, 0, x -> x.introduce(bag, v, treeIndex));
+        }
+        return vector;
+    }
+
+    /**
+     * Move the vector of a bag to another bag: the vertices that are not in the target are forgotten, each one right
+     * after its edges to the remaining vertices, and then the missing vertices are introduced.
+     * @param node The bag of the vector.
+     * @param target The vertices of the target bag in ascending order.
+     * @param vector The vector.
+     * @return The vector for the target bag.
+     */
+    private MSOStateVector lift(int node, int[] target, MSOStateVector vector) {
+        Bag<Integer> bag = work[node];
+        bag.vertices.clear();
+        for (int v : vertices[node]) bag.vertices.add(v);
+        for (int v : vertices[node]) {
+            if (Arrays.binarySearch(target, v) >= 0) continue;
+            for (Integer w : graph.getNeighborhood(v)) {
+                if (bag.vertices.contains(w)) vector = step(vector, bag, 0, x -> x.edge(bag, v, w, treeIndex));
+            }
+            bag.vertices.remove(v);
+            vector = step(vector, bag, 0, x -> x.forget(bag, v, treeIndex));
+        }
+        for (int v : target) {
+            if (Arrays.binarySearch(vertices[node], v) >= 0) continue;
+            bag.vertices.add(v);
+            vector = step(vector, bag, 0, x -> x.introduce(bag, v, treeIndex));
+        }
+        return vector;
+    }
+
+    /**
+     * An operation on a state vector.
+     */
+    @FunctionalInterface
+    private interface Operation {
+        StateVector<Integer> apply(MSOStateVector vector);
+    }
+
+    /**
+     * Apply an operation, count the states, and give the vector the chance to reduce itself (or to abort the run).
+     * @param vector The vector.
+     * @param bag The bag after the operation.
+     * @param released The number of states of another vector that is consumed by the operation.
+     * @param operation The operation.
+     * @return The resulting vector.
+     */
+    private MSOStateVector step(MSOStateVector vector, Bag<Integer> bag, long released, Operation operation) {
+        if (cancelled) throw new CancellationException("The dynamic program was cancelled.");
+        long before = vector.size();
+        MSOStateVector result = (MSOStateVector) operation.apply(vector);
+        account(result.size() - before - released);
+        if (isOverBudget()) {
+            for (MSOStateVector other : waiting.get()) spill(other);
+        }
+        if (result.shouldReduce(bag, treeIndex)) {
+            long reducible = result.size();
+            result.reduce(bag, treeIndex);
+            account(result.size() - reducible);
+        }
+        return result;
+    }
+
+    /**
+     * Update the number of live states and its peak.
+     * @param delta The change of the number of states.
+     */
+    private void account(long delta) {
+        long now = live.addAndGet(delta);
+        peak.accumulateAndGet(now, Math::max);
+    }
+}
@@ -0,0 +1,149 @@
+package solver;
+
+import java.util.Arrays;
+
+/**
+ * A state table on the heap, implemented as open-addressing hash table over the packed content of the states.
+ *
+ * States are stored in insertion order in an array, the hash table only maps to positions in this array. The hash of
+ * every state is cached, such that probing and growing never recompute it. If a state is inserted that is equal to a
+ * stored one, the one with the smaller value is kept using a single probe, @see #insertOrKeepMin. A replaced state
+ * leaves a hole in the array and the new one is appended, hence, iteration order is the order in which the kept states
+ * were inserted.
+ *
+ * If the states have components, they are interned when a state is inserted (as long as this pays off), @see
+ * ComponentInterner. Equal components are then shared between the states and compared by reference.
+ */
+final class HeapStateTable implements StateTable {
+
+    /** Initial number of states that fit into the table. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The states in insertion order, replaced states are null. */
+    private MSOStateVector.MSOState[] entries;
+
+    /** The hash of entries[i]. */
+    private int[] hashes;
+
+    /** Number of used positions in entries (including holes). */
+    private int limit;
+
+    /** Number of states in the table. */
+    private int size;
+
+    /** Open-addressing table of positions in entries plus one (zero marks a free cell), its length is a power of two. */
+    private int[] cells;
+
+    /** Interns the components of the stored states, or null if states have no components. */
+    private final ComponentInterner interner;
+
+    /**
+     * Create an empty table.
+     * @param layout The layout of the states.
+     */
+    HeapStateTable(StateLayout layout) {
+        this.interner = layout.componentSizes.length > 0 ? new ComponentInterner() : null;
+        this.entries = new MSOStateVector.MSOState[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.cells = new int[2 * INITIAL_CAPACITY];
+    }
+
+    @Override
+    public void insertOrKeepMin(MSOStateVector.MSOState state) {
+        int hash = interner == null ? state.hashCode() : intern(state);
+        int mask = cells.length - 1;
+        int cell = mix(hash) & mask;
+        while (cells[cell] != 0) {
+            int position = cells[cell] - 1;
+            MSOStateVector.MSOState present = entries[position];
+            if (hashes[position] == hash && present.equals(state)) {
+                if (present.value > state.value) {
+                    entries[position] = null;
+                    cells[cell] = append(state, hash) + 1;
+                }
+                return;
+            }
+            cell = (cell + 1) & mask;
+        }
+        cells[cell] = append(state, hash) + 1;
+        size++;
+        if (2 * limit > cells.length) grow();
+    }
+
+    /** Intern the components of a state as long as this pays off and return its hash code. */
+    private int intern(MSOStateVector.MSOState state) {
+        if (!interner.pays()) return state.hashCode();
+        return ((MSOStateVector.InternedState) state).intern(interner);
+    }
+
+    /** Append a state to the entries and return its position. */
+    private int append(MSOStateVector.MSOState state, int hash) {
+        if (limit == entries.length) {
+            entries = Arrays.copyOf(entries, 2 * entries.length);
+            hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+        }
+        entries[limit] = state;
+        hashes[limit] = hash;
+        return limit++;
+    }
+
+    /** Double the hash table and insert all positions again, holes are dropped in the process. */
+    private void grow() {
+        int kept = 0;
+        for (int i = 0; i < limit; i++) {
+            if (entries[i] == null) continue;
+            entries[kept] = entries[i];
+            hashes[kept] = hashes[i];
+            kept++;
+        }
+        Arrays.fill(entries, kept, limit, null);
+        limit = kept;
+        cells = new int[2 * cells.length];
+        int mask = cells.length - 1;
+        for (int i = 0; i < limit; i++) {
+            int cell = mix(hashes[i]) & mask;
+            while (cells[cell] != 0) cell = (cell + 1) & mask;
+            cells[cell] = i + 1;
+        }
+    }
+
+    /** Spread the bits of a hash code, such that linear probing works with Arrays.hashCode. */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(entries, 0, limit, null);
+        Arrays.fill(cells, 0);
+        if (interner != null) interner.clear();
+        limit = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public MSOStateVector.MSOState get(int i) {
+        return entries[i];
+    }
+
+    @Override
+    public void release() {
+        this.entries = new MSOStateVector.MSOState[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.cells = new int[2 * INITIAL_CAPACITY];
+        if (interner != null) interner.release();
+        this.limit = 0;
+        this.size = 0;
+    }
+}
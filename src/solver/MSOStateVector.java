@@ -3,10 +3,14 @@ package solver;
 import jdrasil.graph.Bag;
 import jdrasil.workontd.StateVector;
 import logic.LogicalObject;
-import logic.formulas.Formula;
+import logic.StateSink;
 import logic.quantifiers.Quantifier;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
 
 /**
  * Represent a collections of states in which the tree-automaton can be for a specific bag.
@@ -16,57 +20,185 @@ public class MSOStateVector implements StateVector<Integer> {
     /** turn of logging */
     private final boolean LOG = false;
 
+    /** Number of units of the join (@see StateJoin) that one task of a parallel join processes, @see #joinParallel. */
+    private static final int JOIN_CHUNK = 1024;
+
+    /** Vectors with at least this many states remove dominated states after forget and join operations, @see #reduce. */
+    private static final int REDUCE_THRESHOLD = 256;
+
     /** All fragments and quantifier. of the formula. */
-    private List<LogicalObject> logicalObjects;
+    private LogicalObject[] logicalObjects;
+
+    /** The layout of the states, i.\,e., which logical object is stored inline and which in a component. */
+    private StateLayout layout;
+
+    /** The variables of the quantifiers, i.\,e., of logicalObjects[0],...,logicalObjects[variables.length-1]. */
+    private String[][] variables;
 
     /** All possible states for the current bag. */
-    protected Map<MSOState, MSOState> states;
+    protected StateTable states;
+
+    /** The table into which the next operation writes its states, swapped with states afterwards. */
+    private StateTable buffer;
+
+    /** The pool on which joins run in parallel, or null if they run sequentially. */
+    private ForkJoinPool pool;
+
+    /** Finds dominated states, or null if no logical object is ordered, i.\,e., if states cannot dominate each other. */
+    private Dominance dominance;
+
+    /** True, if the last operation was a forget or a join, after which dominated states are removed. */
+    private boolean reducible;
+
+    /** The number of states from which on dominated states are removed, raised while this removes few states. */
+    private int reduceAt;
+
+    /** If positive, only this many states of least value are kept after every operation, @see #keepBest. */
+    private int beam;
+
+    /** States with a larger value are dropped, as a solution of this value is known. */
+    private int upperBound;
+
+    /** The states while they are spilled to temporary files, @see #spill, or null if they are in memory. */
+    private StateSpill spilled;
 
     /**
      * Just initialize data structures.
-     * @param tw The tree width of the decomposition (not bag size).
-     * @param quantifiers All quantifier of the formula.
-     * @param formulas All subformulas of the formula.
+     * @param logicalObjects All quantifier and subformulas of the formula (quantifier first).
+     * @param layout The layout of the states, @see StateLayout.
+     * @param variables The variables of the quantifiers (which come first in logicalObjects).
+     * @param arena If not null, the states are stored off-heap in buffers of this arena.
+     * @param pool If not null, joins run in parallel on this pool.
+     * @param beam If positive, only this many states of least value are kept.
+     * @param upperBound States with a larger value are dropped.
      */
-    public MSOStateVector(int tw, List<Quantifier> quantifiers, List<Formula> formulas) {
-        this.logicalObjects = new LinkedList<>();
-        this.logicalObjects.addAll(quantifiers); // it is important that quantifier appear in the list before formulas!
-        this.logicalObjects.addAll(formulas);
-        this.states = new LinkedHashMap<>();
-        MSOState initialState = new MSOState(tw);
-        this.states.put(initialState, initialState);
+    MSOStateVector(LogicalObject[] logicalObjects, StateLayout layout, String[][] variables, OffHeapStateTable.Arena arena, ForkJoinPool pool, int beam, int upperBound) {
+        this.logicalObjects = logicalObjects;
+        this.layout = layout;
+        this.variables = variables;
+        this.pool = pool;
+        if (Arrays.stream(logicalObjects).anyMatch(LogicalObject::isOrdered)) this.dominance = new Dominance(logicalObjects, layout);
+        this.reduceAt = REDUCE_THRESHOLD;
+        this.beam = beam;
+        this.upperBound = upperBound;
+        this.states = arena == null ? new HeapStateTable(layout) : new OffHeapStateTable(this, layout.inlineWords, arena);
+        this.buffer = arena == null ? new HeapStateTable(layout) : new OffHeapStateTable(this, layout.inlineWords, arena);
+        this.states.insertOrKeepMin(newState());
     }
 
     /**
-     * Insert the given state into the given set of states. In case the element was already present, take the one that
-     * optimization potential optimization quantifier.
-     * @param newStates A set of states.
-     * @param state The state to be inserted into the set.
+     * Make the states written to the buffer the current states, the old ones are cleared and become the next buffer.
      */
-    private void secureInsert(Map<MSOState, MSOState> newStates, MSOState state) {
-        if (newStates.containsKey(state)) {
-            // we already have seen a the same state, minimize the value for optimization quantifier
-            if (newStates.get(state).value > state.value) {
-                newStates.remove(state);
-                newStates.put(state, state);
-            }
-        } else {
-            newStates.put(state, state);
+    private void swap() {
+        StateTable table = states;
+        states = buffer;
+        buffer = table;
+        buffer.clear();
+    }
+
+    /**
+     * The transition of a single logical object, @see #fuse.
+     */
+    @FunctionalInterface
+    private interface Transition {
+        void apply(LogicalObject lo, MSOState state, StateSink sink);
+    }
+
+    /**
+     * Chain the transitions of all logical objects that require it into one sink. A state pushed into the result runs
+     * through the objects depth-first, i.\,e., every state an object produces is passed on to the next object directly,
+     * and the states produced by the last object are pushed into the given sink. Hence, no intermediate states are
+     * stored, and a state that is rejected by an object is dropped before any later object copies it.
+     * @param requires Selects the logical objects that take part.
+     * @param transition The transition of a single object.
+     * @param last Receives the resulting states.
+     * @return The sink that runs the whole pass, or last if no object takes part.
+     */
+    private StateSink fuse(Predicate<LogicalObject> requires, Transition transition, StateSink last) {
+        StateSink sink = last;
+        for (int i = logicalObjects.length - 1; i >= 0; i--) {
+            LogicalObject lo = logicalObjects[i];
+            if (!requires.test(lo)) continue;
+            StateSink next = sink;
+            sink = state -> transition.apply(lo, state, next);
+        }
+        return sink;
+    }
+
+    /**
+     * Push all current states into the given sink and make the states written to the buffer the current states.
+     * @param pass The sink, which writes to the buffer.
+     */
+    private void run(StateSink pass) {
+        for (int i = 0; i < states.limit(); i++) {
+            MSOState state = states.get(i);
+            if (state != null) pass.push(state);
         }
+        swap();
+    }
+
+    /**
+     * Free the memory of the states, the state vector is empty afterwards.
+     */
+    public void release() {
+        states.release();
+        buffer.release();
+        if (spilled != null) spilled.delete();
+        spilled = null;
+    }
+
+    /**
+     * Free the memory of the buffer, which is only needed by the next operation. Used for vectors that wait for their
+     * sibling at a join bag.
+     */
+    void trim() {
+        buffer.release();
+    }
+
+    /**
+     * Write the states to temporary files and free their memory, @see StateSpill. Used for vectors that wait for their
+     * sibling at a join bag, the join reads the states back partition by partition.
+     */
+    void spill() {
+        if (spilled != null) return;
+        spilled = new StateSpill(this, layout, new WeakKey(logicalObjects, layout), states);
+        states.release();
+        buffer.release();
+    }
+
+    /**
+     * Check whether the states are spilled to temporary files.
+     * @return True, if the states wait for the next join outside of the memory.
+     */
+    boolean isSpilled() {
+        return spilled != null;
+    }
+
+    /**
+     * The number of states for the current bag that are in memory, i.\,e., none while they are spilled.
+     * @return The number of states.
+     */
+    public int size() {
+        return states.size();
     }
 
     @Override
     public StateVector<Integer> introduce(Bag<Integer> bag, Integer v, Map<Integer, Integer> treeIndex) {
         int index = treeIndex.get(v);
         if (LOG) System.out.println("introducing " + v + " (" + index + ")");
-        for (LogicalObject lo : logicalObjects) {
-            if (!lo.requiresIntroduce()) continue;
-            Map<MSOState, MSOState> newStates = new LinkedHashMap<>();
-            for (MSOState state : states.keySet()) {
-                for (MSOState newState : lo.introduce(state, v, index)) secureInsert(newStates, newState);
+        reducible = false;
+        run(fuse(LogicalObject::requiresIntroduce, (lo, state, sink) -> lo.introduce(state, v, index, sink), state -> {
+            if (state.value > upperBound) return;
+
+            // record in which sets the quantifiers have put v, @see Trace
+            for (int i = 0; i < variables.length; i++) {
+                Quantifier Q = (Quantifier) logicalObjects[i];
+                for (int j = 0; j < variables[i].length; j++) {
+                    if (Q.isMember(state, j, index)) state.trace = Trace.choose(state.trace, v, i, j);
+                }
             }
-            this.states = newStates;
-        }
+            buffer.insertOrKeepMin(state);
+        }));
         if (LOG) System.out.println(this);
         return this;
     }
@@ -75,14 +207,10 @@ public class MSOStateVector implements StateVector<Integer> {
     public StateVector<Integer> forget(Bag<Integer> bag, Integer v, Map<Integer, Integer> treeIndex) {
         int index = treeIndex.get(v);
         if (LOG) System.out.println("forgetting " + v + " (" + index + ")");
-        for (LogicalObject lo : logicalObjects) {
-            if (!lo.requiresForget()) continue;
-            Map<MSOState, MSOState> newStates = new LinkedHashMap<>();
-            for (MSOState state : states.keySet()) {
-                for (MSOState newState : lo.forget(state, v, index)) secureInsert(newStates, newState);
-            }
-            this.states = newStates;
-        }
+        reducible = true;
+        StateSink insert = buffer::insertOrKeepMin;
+        StateSink pass = fuse(LogicalObject::requiresForget, (lo, state, sink) -> lo.forget(state, v, index, sink), insert);
+        if (pass != insert) run(pass);
         if (LOG) System.out.println(this);
         return this;
     }
@@ -90,54 +218,118 @@ public class MSOStateVector implements StateVector<Integer> {
     @Override
     public StateVector<Integer> join(Bag<Integer> bag, StateVector<Integer> stateVector, Map<Integer, Integer> treeIndex) {
         if (LOG) System.out.println("join");
+        reducible = true;
         MSOStateVector oStateVector = (MSOStateVector) stateVector;
 
-        // prepare the other set to be indexed easily
-        Map<Integer, List<MSOState>> weakList = new HashMap<>();
-        for (MSOState state : oStateVector.states.keySet()) {
-            if (!weakList.containsKey(state.weakHashCode())) weakList.put(state.weakHashCode(), new LinkedList<>());
-            weakList.get(state.weakHashCode()).add(state);
-        }
-
-        // identify states to join
-        Map<MSOState, MSOState> newStates = new LinkedHashMap<>();
-        for (MSOState state : states.keySet()) {
-            if (!weakList.containsKey(state.weakHashCode())) continue; // no partner to join with
-            for (MSOState oState : weakList.get(state.weakHashCode())) {
-                // we can eventually join state and oState
-                if (!state.weakEquals(oState)) continue;
-                MSOState newState = new MSOState(state);
-                boolean shallAdd = true;
-                for (LogicalObject lo : logicalObjects) {
-                    shallAdd &= lo.join(state, oState, newState, bag, treeIndex);
-                    if (!shallAdd) break;
-                }
-                if (shallAdd) {
-                    joinAssignments(state, oState, newState);
-                    secureInsert(newStates, newState);
-                }
-            }
+        if (spilled == null && oStateVector.spilled == null) {
+            joinTables(states, oStateVector.states, bag, treeIndex);
+        } else {
+            joinPartitions(oStateVector, bag, treeIndex);
         }
-        this.states = newStates;
+        swap();
+        if (spilled != null) spilled.delete();
+        spilled = null;
+        oStateVector.release();
 
         if (LOG) System.out.println(this);
         return this;
     }
 
     /**
-     * Combine the assignment of to (compatible) states.
-     * @param stateA The first state.
-     * @param stateB The second state.
-     * @param newState The resulting state.
+     * Join the states of two tables into the buffer: pair the weak-equal states, in chunks on the pool if there are
+     * enough of them.
+     * @param left The states of this vector.
+     * @param right The states of the joined vector.
+     * @param bag The join bag.
+     * @param treeIndex The tree index of the bag.
      */
-    private void joinAssignments(MSOState stateA, MSOState stateB, MSOState newState) {
-        for (String R : stateA.assignment.keySet()) {
-            if (!newState.assignment.containsKey(R)) newState.assignment.put(R, new BitSet());
-            newState.assignment.get(R).or(stateA.assignment.get(R));
+    private void joinTables(StateTable left, StateTable right, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
+        StateJoin pairs = new StateJoin(logicalObjects, layout, left, right);
+        if (pool == null || pairs.units() <= JOIN_CHUNK) {
+            joinRange(0, pairs.units(), pairs, bag, treeIndex, buffer);
+        } else {
+            joinParallel(pairs, bag, treeIndex);
         }
-        for (String R : stateB.assignment.keySet()) {
-            if (!newState.assignment.containsKey(R)) newState.assignment.put(R, new BitSet());
-            newState.assignment.get(R).or(stateB.assignment.get(R));
+    }
+
+    /**
+     * Join with spilled states in the manner of a grace hash join: weak-equal states are in partitions with the same
+     * number (@see StateSpill), hence, the partitions are joined one after another, and only one partition of a
+     * spilled side is read back at a time. A side that is in memory is split into partitions without copying it. The
+     * joined states are the same as the ones of an ordinary join, only their order differs.
+     * @param oStateVector The joined vector.
+     * @param bag The join bag.
+     * @param treeIndex The tree index of the bag.
+     */
+    private void joinPartitions(MSOStateVector oStateVector, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
+        WeakKey weakKey = new WeakKey(logicalObjects, layout);
+        StateTable[] left = spilled == null ? StateSpill.split(states, weakKey) : null;
+        StateTable[] right = oStateVector.spilled == null ? StateSpill.split(oStateVector.states, weakKey) : null;
+        for (int p = 0; p < StateSpill.PARTITIONS; p++) {
+            if ((left != null ? left[p].size() : spilled.size(p)) == 0) continue;
+            if ((right != null ? right[p].size() : oStateVector.spilled.size(p)) == 0) continue;
+            StateTable l = left != null ? left[p] : spilled.read(p);
+            StateTable r = right != null ? right[p] : oStateVector.spilled.read(p);
+            joinTables(l, r, bag, treeIndex);
+            l.release();
+            r.release();
+        }
+    }
+
+    /**
+     * Join the pairs of a range of units and write the results to a table. Only the new states are modified, hence,
+     * disjoint ranges can be joined concurrently.
+     * @param from The first unit.
+     * @param to The unit after the last one.
+     * @param pairs The pairs of weak-equal states of both vectors.
+     * @param bag The join bag.
+     * @param treeIndex The tree index of the bag.
+     * @param target The table that receives the joined states.
+     */
+    private void joinRange(int from, int to, StateJoin pairs, Bag<Integer> bag, Map<Integer, Integer> treeIndex, StateTable target) {
+        pairs.pairs(from, to, (state, oState) -> {
+            MSOState newState = state.getCopy();
+            for (LogicalObject lo : logicalObjects) {
+                if (!lo.join(state, oState, newState, bag, treeIndex)) return;
+            }
+            if (newState.value > upperBound) return;
+            newState.trace = Trace.join(state.trace, oState.trace);
+            target.insertOrKeepMin(newState);
+        });
+    }
+
+    /**
+     * Join the pairs in chunks of @see #JOIN_CHUNK units on the pool. Every chunk is joined into a table of its
+     * own, in which equal states are already reduced to the one of minimal value, and the tables are merged into the
+     * buffer in the order of the chunks. As a table keeps the first of equal states of the same value, the buffer ends
+     * up with the same states in the same order as after a sequential join, independent of the number of threads and
+     * of the order in which the chunks finish. Chunks are processed in rounds of twice the parallelism, such that only
+     * the tables of one round are held at a time.
+     * @param pairs The pairs of weak-equal states of both vectors.
+     * @param bag The join bag.
+     * @param treeIndex The tree index of the bag.
+     */
+    private void joinParallel(StateJoin pairs, Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
+        int chunks = (pairs.units() + JOIN_CHUNK - 1) / JOIN_CHUNK;
+        HeapStateTable[] tables = new HeapStateTable[Math.min(chunks, 2 * pool.getParallelism())];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(tables.length);
+        for (int first = 0; first < chunks; first += tables.length) {
+            tasks.clear();
+            for (int t = 0; t < tables.length && first + t < chunks; t++) {
+                int from = (first + t) * JOIN_CHUNK;
+                int to = Math.min(from + JOIN_CHUNK, pairs.units());
+                if (tables[t] == null) tables[t] = new HeapStateTable(layout);
+                HeapStateTable table = tables[t];
+                tasks.add(pool.submit(() -> joinRange(from, to, pairs, bag, treeIndex, table)));
+            }
+            for (int t = 0; t < tasks.size(); t++) {
+                tasks.get(t).join();
+                for (int i = 0; i < tables[t].limit(); i++) {
+                    MSOState state = tables[t].get(i);
+                    if (state != null) buffer.insertOrKeepMin(state);
+                }
+                tables[t].clear();
+            }
         }
     }
 
@@ -146,169 +338,377 @@ public class MSOStateVector implements StateVector<Integer> {
         int indexV = treeIndex.get(v);
         int indexW = treeIndex.get(w);
         if (LOG) System.out.println("edge " + v + " " + w + " (" + indexV + ", " + indexW + ")");
-        for (LogicalObject lo : logicalObjects) {
-            if (!lo.requiresEdge()) continue;
-            Map<MSOState, MSOState> newStates = new LinkedHashMap<>();
-            for (MSOState state : states.keySet()) {
-                for (MSOState newState : lo.edge(state, v, w, indexV, indexW)) secureInsert(newStates, newState);
-            }
-            this.states = newStates;
-        }
+        reducible = false;
+        StateSink insert = buffer::insertOrKeepMin;
+        StateSink pass = fuse(LogicalObject::requiresEdge, (lo, state, sink) -> lo.edge(state, v, w, indexV, indexW, sink), insert);
+        if (pass != insert) run(pass);
         if (LOG) System.out.println(this);
         return this;
     }
 
     @Override
     public boolean shouldReduce(Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
-        return false;
+        // called after every bag, so this is where a run can be aborted (for instance on a timeout of the server)
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("The dynamic program was interrupted.");
+        return dominance != null && reducible && states.size() >= reduceAt || beam > 0 && states.size() > beam;
     }
 
+    /**
+     * Remove dominated states after forget and join operations, and keep only the best states in a beam search.
+     * @param bag The current bag.
+     * @param treeIndex The tree index of the bag.
+     */
     @Override
     public void reduce(Bag<Integer> bag, Map<Integer, Integer> treeIndex) {
+        if (dominance != null && reducible && states.size() >= reduceAt) removeDominated();
+        if (beam > 0 && states.size() > beam) keepBest();
+        if (LOG) System.out.println("reduced to " + this);
+    }
+
+    /**
+     * Remove dominated states, which can never lead to a better solution than the states that dominate them, @see
+     * Dominance. The remaining states keep their order. If only few states are removed, the next reduction waits until
+     * the vector has grown.
+     */
+    private void removeDominated() {
+        MSOState[] all = current();
+        boolean[] dominated = dominance.dominated(all);
+        int removed = 0;
+        for (boolean d : dominated) if (d) removed++;
+        reduceAt = 16 * removed < all.length ? 2 * all.length : REDUCE_THRESHOLD;
+        if (removed == 0) return;
+        for (int k = 0; k < all.length; k++) {
+            if (!dominated[k]) buffer.insertOrKeepMin(all[k]);
+        }
+        swap();
+    }
+
+    /**
+     * Keep only the @see #beam states of least value (the first ones of equal value), which keep their order.
+     */
+    private void keepBest() {
+        MSOState[] all = current();
+        long[] byValue = new long[all.length];
+        for (int k = 0; k < all.length; k++) byValue[k] = ((long) all[k].value << 32) | k;
+        Arrays.sort(byValue);
+        boolean[] kept = new boolean[all.length];
+        for (int i = 0; i < beam; i++) kept[(int) byValue[i]] = true;
+        for (int k = 0; k < all.length; k++) {
+            if (kept[k]) buffer.insertOrKeepMin(all[k]);
+        }
+        swap();
+    }
+
+    /**
+     * The current states in their order.
+     * @return An array of the states.
+     */
+    private MSOState[] current() {
+        MSOState[] all = new MSOState[states.size()];
+        for (int i = 0, k = 0; i < states.limit(); i++) {
+            MSOState state = states.get(i);
+            if (state != null) all[k++] = state;
+        }
+        return all;
     }
 
     /**
-     * Get a state that satisfies all formulas if one exists, or null otherwise.
+     * Get a state that satisfies all formulas if one exists, or null otherwise. The assignment of the returned state is
+     * reconstructed from its trace.
      * @return
      */
     public MSOState getSatisfyingState() {
-        List<MSOState> delete = new LinkedList<>();
-        for (MSOState state : states.keySet()) {
+        statesloop: for (int i = 0; i < states.limit(); i++) {
+            MSOState state = states.get(i);
+            if (state == null) continue;
             for (LogicalObject lo : logicalObjects) {
-                if (!lo.finalCheck(state)) delete.add(state);
+                if (!lo.finalCheck(state)) continue statesloop;
             }
+            state.assignment = Trace.reconstruct(state.trace, variables);
+            return state;
         }
-        for (MSOState state : delete) states.remove(state);
-        if (states.size() == 0) return null;
-        return states.keySet().stream().findFirst().get();
+        return null;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (MSOState state : states.keySet()) sb.append(state + "\n");
+        for (int i = 0; i < states.limit(); i++) {
+            if (states.get(i) != null) sb.append(states.get(i) + "\n");
+        }
         return sb.toString();
     }
 
+    /**
+     * A fresh state of this vector, in which all slots are zero.
+     * @return A state with components, if the layout has components.
+     */
+    private MSOState newState() {
+        return layout.componentSizes.length > 0 ? new InternedState() : new MSOState();
+    }
+
+    /**
+     * Write the flat record of a state, @see StateLayout.
+     * @param state The state.
+     * @param record Receives the inline words followed by the components.
+     */
+    void toRecord(MSOState state, long[] record) {
+        for (int w = 0; w < layout.inlineWords; w++) record[w] = state.getWord(w);
+        for (int c = 0, at = layout.inlineWords; c < layout.componentSizes.length; at += layout.componentSizes[c++]) {
+            System.arraycopy(state.getComponent(c), 0, record, at, layout.componentSizes[c]);
+        }
+    }
+
+    /**
+     * Create a state from its flat record, @see StateLayout.
+     * @param record The inline words followed by the components, which is copied.
+     * @param value The value of the state.
+     * @param trace The history of the state.
+     * @return The state.
+     */
+    MSOState fromRecord(long[] record, int value, Trace trace) {
+        long[] words = Arrays.copyOf(record, layout.inlineWords);
+        if (layout.componentSizes.length == 0) return new MSOState(words, value, trace);
+        long[][] components = new long[layout.componentSizes.length][];
+        for (int c = 0, at = layout.inlineWords; c < components.length; at += layout.componentSizes[c++]) {
+            components[c] = Arrays.copyOfRange(record, at, at + layout.componentSizes[c]);
+        }
+        return new InternedState(words, components, value, trace);
+    }
+
     /**
      * A state of the dynamic program, i.\,e., one possible assignment of the vertices of the current bag.
      */
     public class MSOState {
 
-        /** Each logical object is represented in the state description, i.\,e., it has some storage. */
-        public Map<LogicalObject, int[]> stateDescription;
+        /** The packed slots of the logical objects that are stored inline, @see StateLayout. */
+        private long[] words;
+
+        /** True, if the words may be shared with other states and have to be copied before they are modified. */
+        private boolean shared;
 
-        /** We store the assignment, but this is not part of the state description. */
+        /** The history of the state, from which the assignment is reconstructed, @see Trace. */
+        private Trace trace;
+
+        /** The assignment of the quantified variables, only available for the state returned by getSatisfyingState. */
         public Map<String, BitSet> assignment;
 
         /** The value this state has (with respect to potential optimization quantifiers). */
         public int value;
 
         /**
-         * Initialize a fresh state.
-         * @param tw The tree width of the decomposition (not bag size).
+         * Initialize a fresh state, in which all slots are zero.
          */
-        public MSOState(int tw) {
-            this.stateDescription = new LinkedHashMap<>();
-            this.assignment = new HashMap<>();
-            for (LogicalObject lo : logicalObjects) {
-                this.stateDescription.put(lo, new int[lo.getStateSize(tw)]);
-            }
+        public MSOState() {
+            this.words = new long[layout.inlineWords];
             this.value = 0;
         }
 
-        /** Copy-Constructor */
+        /** Create a state from its content, for instance when it is read from an @see OffHeapStateTable. */
+        MSOState(long[] words, int value, Trace trace) {
+            this.words = words;
+            this.value = value;
+            this.trace = trace;
+        }
+
+        /** Copy-Constructor, the words are shared until one of the states modifies them. */
         public MSOState(MSOState o) {
-            this.stateDescription = new HashMap<>(o.stateDescription.size());
-            for (LogicalObject lo : logicalObjects) {
-                stateDescription.put(lo, Arrays.copyOf(o.stateDescription.get(lo), o.stateDescription.get(lo).length));
-            }
-            this.assignment = new HashMap<>();
-            for (String R : o.assignment.keySet()) {
-                this.assignment.put(R, (BitSet) o.assignment.get(R).clone());
-            }
+            this.words = o.words;
+            this.shared = true;
+            o.shared = true;
+            this.trace = o.trace;
             this.value = o.value;
         }
 
         /**
-         * Alternative for the copy constructor.
+         * Alternative for the copy constructor, which also copies states with components.
          * @return
          */
         public MSOState getCopy() {
             return new MSOState(this);
         }
 
+        /** The history of the state, @see Trace. */
+        Trace getTrace() {
+            return trace;
+        }
+
+        /**
+         * Read a word of the state, @see logic.AbstractLogicalObject for the layout of the slots within the words.
+         * @param i The index of the word in the state array.
+         * @return The word.
+         */
+        public long getWord(int i) {
+            return words[i];
+        }
+
+        /**
+         * Write a word of the state. Shared words are copied first, writing the current value does not copy anything.
+         * @param i The index of the word in the state array.
+         * @param value The new word.
+         */
+        public void setWord(int i, long value) {
+            if (words[i] == value) return;
+            if (shared) {
+                words = words.clone();
+                shared = false;
+            }
+            words[i] = value;
+        }
+
+        /**
+         * Read a word of a component, @see StateLayout.
+         * @param c The index of the component.
+         * @param i The index of the word in the component.
+         * @return The word.
+         */
+        public long getComponentWord(int c, int i) {
+            return getComponent(c)[i];
+        }
+
+        /**
+         * Write a word of a component. Components that are shared (with other states or by interning) are copied first.
+         * @param c The index of the component.
+         * @param i The index of the word in the component.
+         * @param value The new word.
+         */
+        public void setComponentWord(int c, int i, long value) {
+            throw new IllegalStateException("The layout of the state has no components.");
+        }
+
+        /** The component with the given index, it must not be modified. */
+        long[] getComponent(int c) {
+            throw new IllegalStateException("The layout of the state has no components.");
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             MSOState that = (MSOState) o;
-            for (LogicalObject lo : logicalObjects) {
-                if (!Arrays.equals(this.stateDescription.get(lo), that.stateDescription.get(lo))) return false;
-            }
-            return true;
+            return Arrays.equals(this.words, that.words);
         }
 
         @Override
         public int hashCode() {
-            int hash = 0;
-            int shift = 0;
-            for (LogicalObject lo : logicalObjects) {
-                shift = (shift + 11) % 21;
-                hash ^= (Arrays.hashCode(this.stateDescription.get(lo)) + 1024) << shift;
+            return Arrays.hashCode(words);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < logicalObjects.length; i++) {
+                sb.append(logicalObjects[i].toString());
+                sb.append(": ");
+                long[] slots = layout.interned[i] ? getComponent(layout.start[i]) : words;
+                int from = layout.interned[i] ? 0 : layout.start[i];
+                for (int j = from; j < from + layout.size[i]; j++) sb.append(Long.toHexString(slots[j])).append(" ");
+                sb.append("#");
             }
-            return hash;
+            sb.replace(sb.length()-1, sb.length(), "");
+            return sb.toString();
         }
+    }
 
-        /**
-         * Two states must not be equal to be joined at a join-bag. However, they must be weakEqual.
-         * @param o Another state.
-         * @return True, if the two states are weak-equal.
-         */
-        public boolean weakEquals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            MSOState that = (MSOState) o;
-            for (LogicalObject lo : logicalObjects) {
-                if (lo.requiresWeakJoin()) {
-                    if (!lo.weakEquals(this, that)) return false;
-                } else {
-                    if (!Arrays.equals(this.stateDescription.get(lo), that.stateDescription.get(lo))) return false;
-                }
+    /**
+     * A state whose layout has components, @see StateLayout. The additional fields are kept out of MSOState, such that
+     * states without components stay small.
+     */
+    class InternedState extends MSOState {
+
+        /** The packed slots of the logical objects that are stored in components. */
+        private long[][] components;
+
+        /** True, if the array of components may be shared with other states. */
+        private boolean componentsShared;
+
+        /** Bit c is set, if component c belongs to this state only and can be modified without a copy. */
+        private long owned;
+
+        /** Initialize a fresh state, in which all slots are zero. */
+        InternedState() {
+            this.components = new long[layout.componentSizes.length][];
+            for (int c = 0; c < components.length; c++) components[c] = new long[layout.componentSizes[c]];
+            this.owned = -1L;
+        }
+
+        /** Create a state from its content, @see #fromRecord. */
+        InternedState(long[] words, long[][] components, int value, Trace trace) {
+            super(words, value, trace);
+            this.components = components;
+            this.owned = -1L;
+        }
+
+        /** Copy-Constructor, the words and components are shared until one of the states modifies them. */
+        InternedState(InternedState o) {
+            super(o);
+            this.components = o.components;
+            this.componentsShared = true;
+            o.componentsShared = true;
+            o.owned = 0;
+        }
+
+        @Override
+        public MSOState getCopy() {
+            return new InternedState(this);
+        }
+
+        @Override
+        public void setComponentWord(int c, int i, long value) {
+            if (components[c][i] == value) return;
+            if (componentsShared) {
+                components = components.clone();
+                componentsShared = false;
             }
-            return true;
+            if ((owned & (1L << c)) == 0) {
+                components[c] = components[c].clone();
+                owned |= 1L << c;
+            }
+            components[c][i] = value;
+        }
+
+        @Override
+        long[] getComponent(int c) {
+            return components[c];
         }
 
         /**
-         * A weaker hash-code used for efficient computation at join-bags.
-         * @return The weak hash-code.
+         * Replace the components of this state by their canonical instances, afterwards they are shared.
+         * @param interner The interner of the table that stores this state.
+         * @return The hash code of the state, which is computed on the way.
          */
-        public int weakHashCode() {
-            int hash = 0;
-            int shift = 0;
-            for (LogicalObject lo : logicalObjects) {
-                shift = (shift + 11) % 21;
-                if (lo.requiresWeakJoin()) {
-                    hash ^= (lo.weakHashCode(this) + 1024) << shift;
-                } else {
-                    hash ^= (Arrays.hashCode(this.stateDescription.get(lo)) + 1024) << shift;
+        int intern(ComponentInterner interner) {
+            int hash = super.hashCode();
+            for (int c = 0; c < components.length; c++) {
+                int componentHash = Arrays.hashCode(components[c]);
+                hash = 31 * hash + componentHash;
+                long[] canonical = interner.intern(c, components[c], componentHash);
+                if (canonical == components[c]) continue;
+                if (componentsShared) {
+                    components = components.clone();
+                    componentsShared = false;
                 }
+                components[c] = canonical;
             }
+            owned = 0;
             return hash;
         }
 
         @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append(assignment);
-            for (LogicalObject lo : logicalObjects) {
-                sb.append(lo.toString());
-                sb.append(": ");
-                sb.append(Arrays.toString(stateDescription.get(lo)));
-                sb.append("#");
+        public boolean equals(Object o) {
+            if (!super.equals(o)) return false;
+            InternedState that = (InternedState) o;
+            for (int c = 0; c < components.length; c++) {
+                if (this.components[c] != that.components[c] && !Arrays.equals(this.components[c], that.components[c])) return false;
             }
-            sb.replace(sb.length()-1, sb.length(), "");
-            return sb.toString();
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = super.hashCode();
+            for (long[] component : components) hash = 31 * hash + Arrays.hashCode(component);
+            return hash;
         }
     }
 
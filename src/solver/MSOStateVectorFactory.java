@@ -2,10 +2,12 @@ package solver;
 
 import jdrasil.workontd.StateVector;
 import jdrasil.workontd.StateVectorFactory;
+import logic.LogicalObject;
 import logic.formulas.Formula;
 import logic.quantifiers.Quantifier;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class MSOStateVectorFactory implements StateVectorFactory<Integer> {
 
@@ -15,14 +17,107 @@ public class MSOStateVectorFactory implements StateVectorFactory<Integer> {
     /** A list of all sub formulas that appear in the formula. */
     private List<Formula> formulas;
 
-    public MSOStateVectorFactory(List<Quantifier> quantifiers, List<Formula> formulas) {
+    /** All quantifiers and formulas, it is important that quantifier appear before formulas! */
+    private LogicalObject[] logicalObjects;
+
+    /** The variables of each quantifier. */
+    private String[][] variables;
+
+    /** The arena of the off-heap states, or null if states are stored on the heap. */
+    private OffHeapStateTable.Arena arena;
+
+    /** The tree width for which the state layout was computed. */
+    private int tw;
+
+    /** Layout of the states, @see StateLayout. */
+    private StateLayout layout;
+
+    /** The pool on which joins run in parallel, or null. */
+    private ForkJoinPool pool;
+
+    /** If positive, vectors keep at most this many states, @see setBeam. */
+    private int beam;
+
+    /** Vectors drop states with a larger value, @see setUpperBound. */
+    private int upperBound;
+
+    /**
+     * Create a factory and lay out the states, i.\,e., assign words of the states to the logical objects.
+     * @param quantifiers All quantifier of the formula.
+     * @param formulas All subformulas of the formula.
+     * @param tw The tree width of the decomposition (not bag size).
+     * @param offHeap If true, states are stored outside of the heap, @see OffHeapStateTable.
+     * @param intern If true, objects with several words are stored in interned components, @see StateLayout. Off-heap
+     *               tables store flat records, hence, components are only used on the heap.
+     * @param pool If not null, joins run in parallel on this pool.
+     */
+    public MSOStateVectorFactory(List<Quantifier> quantifiers, List<Formula> formulas, int tw, boolean offHeap, boolean intern, ForkJoinPool pool) {
         this.quantifiers = quantifiers;
         this.formulas = formulas;
+        this.tw = tw;
+        this.pool = pool;
+        this.arena = offHeap ? new OffHeapStateTable.Arena() : null;
+        this.logicalObjects = new LogicalObject[quantifiers.size() + formulas.size()];
+        int i = 0;
+        for (LogicalObject lo : quantifiers) logicalObjects[i++] = lo;
+        for (LogicalObject lo : formulas) logicalObjects[i++] = lo;
+        this.variables = new String[quantifiers.size()][];
+        for (i = 0; i < variables.length; i++) variables[i] = quantifiers.get(i).getVariables();
+        for (Formula psi : formulas) psi.bindVariables(quantifiers);
+        this.layout = new StateLayout(logicalObjects, tw, intern && !offHeap);
+        this.upperBound = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Create a factory for another run of the same formula, which shares the layout (and, hence, the logical objects)
+     * of the given one, but has an arena, a beam, and a bound of its own.
+     * @param other The factory whose layout is shared.
+     */
+    private MSOStateVectorFactory(MSOStateVectorFactory other) {
+        this.quantifiers = other.quantifiers;
+        this.formulas = other.formulas;
+        this.logicalObjects = other.logicalObjects;
+        this.variables = other.variables;
+        this.tw = other.tw;
+        this.layout = other.layout;
+        this.pool = other.pool;
+        this.arena = other.arena != null ? new OffHeapStateTable.Arena() : null;
+        this.upperBound = Integer.MAX_VALUE;
+    }
+
+    /**
+     * A factory for a further run of the formula, @see MSOStateVectorFactory(MSOStateVectorFactory). The logical
+     * objects are laid out only once, such that runs of the formula can take place at the same time on the
+     * parts of a structure, as long as their tree width is at most the one of this factory.
+     * @return The new factory.
+     */
+    MSOStateVectorFactory copy() {
+        return new MSOStateVectorFactory(this);
+    }
+
+    /**
+     * Let the vectors keep only the given number of states of least value after every operation, i.\,e., run a beam
+     * search instead of the exact dynamic program. A solution that is found is feasible, but not necessarily optimal,
+     * and a formula may appear unsatisfiable.
+     * @param beam The number of states, or 0 to keep all states.
+     */
+    public void setBeam(int beam) {
+        this.beam = beam;
+    }
+
+    /**
+     * Let the vectors drop states whose value exceeds the value of a known solution. If the value of a state never
+     * decreases, @see OptimizationQuantifier#hasNonNegativeWeights, such states cannot lead to a better solution.
+     * @param upperBound The value of a known solution.
+     */
+    public void setUpperBound(int upperBound) {
+        this.upperBound = upperBound;
     }
 
     @Override
     public StateVector<Integer> createStateVectorForLeaf(int tw) {
-        return new MSOStateVector(tw, quantifiers, formulas);
+        if (tw > this.tw) throw new IllegalStateException("The states were laid out for tree width " + this.tw + ", not " + tw + ".");
+        return new MSOStateVector(logicalObjects, layout, variables, arena, pool, beam, upperBound);
     }
 
 }
@@ -0,0 +1,462 @@
+package solver;
+
+import jdrasil.graph.Bag;
+import jdrasil.graph.Graph;
+import jdrasil.graph.TreeDecomposition;
+import logic.LogicalObject;
+import logic.Structure;
+import logic.formulas.Formula;
+import logic.quantifiers.OptimizationQuantifier;
+import logic.quantifiers.Quantifier;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Checks formulas against a fixed structure. The structure and its tree decomposition are computed once and can then be
+ * used for any number of formulas.
+ */
+public class ModelChecker {
+
+    /** The structure on which we perform model checking. */
+    private Structure structure;
+
+    /** A tree decomposition of the graph of the structure, which is never modified. */
+    private TreeDecomposition<Integer> td;
+
+    /** The minimal number of bags of a part of @see #parts (but the last one). */
+    private static final int PART_BAGS = 256;
+
+    /** Decompositions of groups of connected components of the structure, @see #split. */
+    private final List<TreeDecomposition<Integer>> parts;
+
+    /** If true, the states of the dynamic program are stored off-heap, @see OffHeapStateTable. */
+    private boolean offHeap;
+
+    /** If true, equal components of the states are shared, @see ComponentInterner. */
+    private boolean intern;
+
+    /** Default of @see #subtreeThreshold. */
+    public static final int DEFAULT_SUBTREE_THRESHOLD = 512;
+
+    /** The pool on which joins and subtrees are evaluated in parallel, or null if everything runs sequentially. */
+    private ForkJoinPool pool;
+
+    /** Minimal number of operations of a subtree to evaluate it in parallel to its siblings, @see DynamicProgram. */
+    private int subtreeThreshold;
+
+    /** The numbers of states per bag of the beam searches that bound min queries, @see #setBranchAndBound. */
+    private static final int[] BEAMS = {16, 256};
+
+    /** If true, min queries are solved by (experimental) branch and bound, @see #setBranchAndBound. */
+    private boolean branchAndBound;
+
+    /** If positive, the budget of live states above which states are spilled, @see DynamicProgram#setSpillBudget. */
+    private long spillBudget;
+
+    /**
+     * Create a model checker for the given structure and tree decomposition. The structure is frozen and must not be
+     * modified afterwards.
+     * @param structure The structure to check formulas against.
+     * @param td A tree decomposition of the graph of the structure.
+     */
+    public ModelChecker(Structure structure, TreeDecomposition<Integer> td) {
+        structure.freeze();
+        this.structure = structure;
+        this.td = td;
+        this.parts = split(td);
+        this.subtreeThreshold = DEFAULT_SUBTREE_THRESHOLD;
+    }
+
+    /**
+     * Run the dynamic program for the formula given by its quantifiers and sub-formulas. If all of them are checked
+     * componentwise (@see LogicalObject#isComponentwise), every part of the structure is solved with a decomposition
+     * of its own (in parallel, if a pool is set), and the solutions of the parts are combined: the structure is a
+     * model if every part is one, the values are added, and the assignments are united. The states of all parts are laid
+     * out for the width of the whole decomposition, such that the parts share the layout of the logical objects.
+     * @param quantifiers All quantifier of the formula.
+     * @param formulas All subformulas of the formula.
+     * @return A satisfying state, or null if the structure is not a model of the formula.
+     */
+    public MSOStateVector.MSOState check(List<Quantifier> quantifiers, List<Formula> formulas) {
+        return solve(quantifiers, formulas).getState();
+    }
+
+    /**
+     * Check the formula like @see #check, and keep the statistics of the check with its result. Several formulas can be
+     * solved at the same time.
+     * @param quantifiers All quantifier of the formula.
+     * @param formulas All subformulas of the formula.
+     * @return The outcome of the check, whose state is null if the structure is not a model of the formula.
+     */
+    public Outcome solve(List<Quantifier> quantifiers, List<Formula> formulas) {
+        List<TreeDecomposition<Integer>> tds = parts.size() > 1 && isComponentwise(quantifiers, formulas) ? parts : List.of(td);
+        MSOStateVectorFactory factory = new MSOStateVectorFactory(quantifiers, formulas, td.getWidth(), offHeap, intern, pool);
+        boolean bounded = branchAndBound && isBounded(quantifiers);
+        Outcome[] outcomes = new Outcome[tds.size()];
+        Runs runs = new Runs();
+        try {
+            if (pool == null || tds.size() == 1) {
+                for (int i = 0; i < tds.size(); i++) {
+                    outcomes[i] = solvePart(tds.get(i), factory, bounded, runs);
+                    if (outcomes[i].state == null) break; // a part that is not a model decides the check
+                }
+            } else {
+                List<ForkJoinTask<Outcome>> tasks = new ArrayList<>(tds.size());
+                for (TreeDecomposition<Integer> part : tds) tasks.add(pool.submit(() -> solvePart(part, factory, bounded, runs)));
+                for (int i = 0; i < tds.size(); i++) {
+                    outcomes[i] = await(tasks.get(i));
+                    if (outcomes[i].state == null) break;
+                }
+            }
+        } finally {
+            runs.cancel(); // parts that still run are not needed anymore
+        }
+
+        // combine the parts
+        long peak = 0;
+        for (Outcome outcome : outcomes) if (outcome != null) peak = Math.max(peak, outcome.peak);
+        long bound = 0;
+        MSOStateVector.MSOState state = null;
+        for (Outcome outcome : outcomes) {
+            if (outcome == null || outcome.state == null) {
+                state = null;
+                break;
+            }
+            bound = outcome.bound == Integer.MAX_VALUE || bound == Integer.MAX_VALUE ? Integer.MAX_VALUE : bound + outcome.bound;
+            if (state == null) {
+                state = outcome.state;
+            } else {
+                state.value += outcome.state.value;
+                for (Map.Entry<String, BitSet> entry : outcome.state.assignment.entrySet()) {
+                    state.assignment.computeIfAbsent(entry.getKey(), k -> new BitSet()).or(entry.getValue());
+                }
+            }
+        }
+        Outcome outcome = new Outcome();
+        outcome.state = state;
+        outcome.peak = peak;
+        outcome.bound = state == null ? Integer.MAX_VALUE : (int) Math.min(bound, Integer.MAX_VALUE);
+        return outcome;
+    }
+
+    /**
+     * Solve the formula on the part of the structure that is covered by a decomposition. With branch and bound, beam
+     * searches find solutions first, each one is bounded by the best solution found so far.
+     * @param td The decomposition of the part.
+     * @param factory The factory of the check, which has laid out the states.
+     * @param bounded If true, the part is solved by branch and bound.
+     * @param runs The runs of the check, which are cancelled together.
+     * @return The solution of the part.
+     */
+    private Outcome solvePart(TreeDecomposition<Integer> td, MSOStateVectorFactory factory, boolean bounded, Runs runs) {
+        Outcome outcome = new Outcome();
+        outcome.bound = Integer.MAX_VALUE;
+        if (bounded) {
+            for (int beam : BEAMS) {
+                MSOStateVector.MSOState state = run(td, factory, beam, outcome.bound, runs, outcome);
+                if (state != null) outcome.bound = state.value;
+            }
+        }
+        outcome.state = run(td, factory, 0, outcome.bound, runs, outcome);
+        return outcome;
+    }
+
+    /**
+     * Check whether the formula can be checked componentwise, @see LogicalObject#isComponentwise.
+     * @param quantifiers All quantifier of the formula.
+     * @param formulas All subformulas of the formula.
+     * @return True, if all quantifiers and formulas are checked componentwise.
+     */
+    private static boolean isComponentwise(List<Quantifier> quantifiers, List<Formula> formulas) {
+        return quantifiers.stream().allMatch(LogicalObject::isComponentwise) && formulas.stream().allMatch(LogicalObject::isComponentwise);
+    }
+
+    /**
+     * Check whether states of the formula can be bounded by the value of a known solution, i.\,e., whether it has
+     * an optimization quantifier with non-negative weights.
+     * @param quantifiers All quantifier of the formula.
+     * @return True, if the value of the states never decreases.
+     */
+    private static boolean isBounded(List<Quantifier> quantifiers) {
+        boolean optimization = false;
+        for (Quantifier Q : quantifiers) {
+            if (!(Q instanceof OptimizationQuantifier)) continue;
+            if (!((OptimizationQuantifier) Q).hasNonNegativeWeights()) return false;
+            optimization = true;
+        }
+        return optimization;
+    }
+
+    /**
+     * Run the dynamic program once.
+     * @param td The decomposition of the part of the structure.
+     * @param layout The factory of the check, of which the run takes a copy.
+     * @param beam If positive, the number of states of least value that are kept per bag.
+     * @param bound States with a larger value are dropped.
+     * @param runs The runs of the check, which are cancelled together.
+     * @param outcome Receives the peak number of states.
+     * @return A satisfying state, or null if none was found.
+     */
+    private MSOStateVector.MSOState run(TreeDecomposition<Integer> td, MSOStateVectorFactory layout, int beam, int bound, Runs runs, Outcome outcome) {
+        MSOStateVectorFactory factory = layout.copy();
+        factory.setBeam(beam);
+        factory.setUpperBound(bound);
+        DynamicProgram solver = new DynamicProgram(factory, td, pool, subtreeThreshold);
+        solver.setSpillBudget(spillBudget);
+        runs.start(solver);
+        try {
+            MSOStateVector solution = solver.run();
+            MSOStateVector.MSOState state = solution.getSatisfyingState();
+            solution.release();
+            return state;
+        } finally {
+            runs.finish(solver);
+            outcome.peak = Math.max(outcome.peak, solver.getPeakStates());
+        }
+    }
+
+    /**
+     * Wait for the task of a part. The waiting thread is outside of the pool and waits interruptibly, failures of the
+     * task are rethrown.
+     * @param task The task.
+     * @return The solution of the part.
+     */
+    private static Outcome await(ForkJoinTask<Outcome> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("The model check was interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Split a decomposition into decompositions of the connected components of its graph. The bags that meet a
+     * component, restricted to it, form a subtree of the decomposition (as adjacent vertices share a bag), i.\,e., a
+     * decomposition of the component. Small components are grouped, such that every part but the last one has at
+     * least @see #PART_BAGS bags; a part with several components is a forest, which the dynamic program handles.
+     * @param td The decomposition.
+     * @return The decompositions of the parts, or just td if the graph is connected.
+     */
+    private static List<TreeDecomposition<Integer>> split(TreeDecomposition<Integer> td) {
+        Graph<Integer> graph = td.getGraph();
+        List<Set<Integer>> components = graph.getConnectedComponents();
+        if (components.size() <= 1) return List.of(td);
+        components.sort(Comparator.comparing(Collections::min));
+        Map<Integer, Integer> component = new HashMap<>();
+        for (int c = 0; c < components.size(); c++) for (Integer v : components.get(c)) component.put(v, c);
+
+        // restrict the bags to the components
+        List<Bag<Integer>> bags = new ArrayList<>(td.getBags());
+        bags.sort(null);
+        List<Map<Integer, Set<Integer>>> pieces = new ArrayList<>(bags.size());
+        int[] count = new int[components.size()];
+        for (Bag<Integer> bag : bags) {
+            Map<Integer, Set<Integer>> piece = new TreeMap<>();
+            for (Integer v : bag.vertices) piece.computeIfAbsent(component.get(v), c -> new HashSet<>()).add(v);
+            for (int c : piece.keySet()) count[c]++;
+            pieces.add(piece);
+        }
+
+        // group the components into parts
+        List<TreeDecomposition<Integer>> parts = new ArrayList<>();
+        int[] part = new int[components.size()];
+        int size = PART_BAGS;
+        for (int c = 0; c < components.size(); c++) {
+            if (size >= PART_BAGS) {
+                parts.add(new TreeDecomposition<>(graph));
+                size = 0;
+            }
+            part[c] = parts.size() - 1;
+            size += count[c];
+        }
+
+        // copy the restricted bags and the tree edges between them
+        Map<Bag<Integer>, Integer> number = new HashMap<>();
+        List<Map<Integer, Bag<Integer>>> copies = new ArrayList<>(bags.size());
+        for (int i = 0; i < bags.size(); i++) {
+            number.put(bags.get(i), i);
+            Map<Integer, Bag<Integer>> copy = new HashMap<>();
+            for (Map.Entry<Integer, Set<Integer>> piece : pieces.get(i).entrySet()) {
+                copy.put(piece.getKey(), parts.get(part[piece.getKey()]).createBag(piece.getValue()));
+            }
+            copies.add(copy);
+        }
+        for (int i = 0; i < bags.size(); i++) {
+            for (Bag<Integer> neighbor : td.getNeighborhood(bags.get(i))) {
+                int j = number.get(neighbor);
+                if (j < i) continue;
+                for (Map.Entry<Integer, Bag<Integer>> copy : copies.get(i).entrySet()) {
+                    Bag<Integer> other = copies.get(j).get(copy.getKey());
+                    if (other != null) parts.get(part[copy.getKey()]).addTreeEdge(copy.getValue(), other);
+                }
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Select where the states of the dynamic program are stored.
+     * @param offHeap True, if states should be stored in direct buffers outside of the heap.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Select whether equal components of the states (the slots of logical objects with several words) are stored only
+     * once. This saves memory if many states share components, but makes access to the slots slower. Off-heap tables
+     * store flat records, hence, this has no effect together with @see setOffHeap.
+     * @param intern True, if components should be interned.
+     */
+    public void setInterning(boolean intern) {
+        this.intern = intern;
+    }
+
+    /**
+     * Select whether min queries (with non-negative weights) are solved by branch and bound: short beam searches,
+     * which keep only the states of least value, find solutions first, and the exact dynamic program then drops
+     * every state whose value exceeds the best of them. The result is the same. This is experimental and off by
+     * default: there is no lower bound on the value that the rest of the decomposition adds to a state, hence, only
+     * states whose value alone exceeds the bound are dropped, which are few, and the beam searches cost extra time.
+     * @param branchAndBound True, if min queries should be bounded.
+     */
+    public void setBranchAndBound(boolean branchAndBound) {
+        this.branchAndBound = branchAndBound;
+    }
+
+    /**
+     * Select a budget for the live states of a run, above which state vectors that wait for a join are spilled to
+     * temporary files, @see DynamicProgram#setSpillBudget.
+     * @param spillBudget The number of live states, or 0 to keep all states in memory.
+     */
+    public void setSpillBudget(long spillBudget) {
+        this.spillBudget = spillBudget;
+    }
+
+    /**
+     * Select the pool on which the dynamic program joins the states of large bags and evaluates large subtrees in
+     * parallel. The result does not depend on the number of threads, and the pool may be shared by several checkers.
+     * @param pool The pool, or null to run sequentially.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Select how large the subtrees of a join bag must be to be evaluated in parallel (only with @see setPool).
+     * @param subtreeThreshold The minimal number of operations (about the bags of a nice decomposition) of a subtree.
+     */
+    public void setSubtreeThreshold(int subtreeThreshold) {
+        this.subtreeThreshold = subtreeThreshold;
+    }
+
+    /**
+     * The storage backend of the states, for statistics.
+     * @return >off-heap<, >heap<, or >heap (interned components)<.
+     */
+    public String getStorage() {
+        if (offHeap) return "off-heap";
+        return intern ? "heap (interned components)" : "heap";
+    }
+
+    /**
+     * The structure used by this checker.
+     * @return The structure.
+     */
+    public Structure getStructure() {
+        return structure;
+    }
+
+    /**
+     * The tree decomposition used by this checker.
+     * @return The tree decomposition.
+     */
+    public TreeDecomposition<Integer> getTreeDecomposition() {
+        return td;
+    }
+
+    /**
+     * The solution of a check, or of a part of the structure, together with its statistics.
+     */
+    public static final class Outcome {
+
+        /** The satisfying state, or null if the part is not a model. */
+        MSOStateVector.MSOState state;
+
+        /** The value of the best solution of the beam searches, or Integer.MAX_VALUE. */
+        int bound;
+
+        /** The maximal number of live states of the runs. */
+        long peak;
+
+        /**
+         * The satisfying state of the check.
+         * @return The state, or null if the structure is not a model of the formula.
+         */
+        public MSOStateVector.MSOState getState() {
+            return state;
+        }
+
+        /**
+         * The maximal number of states that were alive at the same time during a run of the check, for statistics.
+         * Parts of the structure that are solved in parallel are not added up.
+         * @return The peak number of states.
+         */
+        public long getPeakStates() {
+            return peak;
+        }
+
+        /**
+         * The value of the best solution the beam searches of the check found, for statistics.
+         * @return The upper bound, or Integer.MAX_VALUE if the check was not bounded or found no solution.
+         */
+        public int getUpperBound() {
+            return bound;
+        }
+    }
+
+    /**
+     * The runs of the dynamic program of a check, which are cancelled together once the result is known.
+     */
+    private static final class Runs {
+
+        /** The running programs. */
+        private final Set<DynamicProgram> programs = ConcurrentHashMap.newKeySet();
+
+        /** Set once the check is over, runs that start later are cancelled at once. */
+        private volatile boolean cancelled;
+
+        void start(DynamicProgram program) {
+            programs.add(program);
+            if (cancelled) program.cancel();
+        }
+
+        void finish(DynamicProgram program) {
+            programs.remove(program);
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (DynamicProgram program : programs) program.cancel();
+        }
+    }
+}
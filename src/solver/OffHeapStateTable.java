@@ -0,0 +1,293 @@
+package solver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A state table that stores its states outside of the heap in direct byte buffers. Every state is a fixed-width record
+ * of its words, its value, and its cached hash; the open-addressing hash table over the records is off-heap as well.
+ * The traces of the states remain on the heap, i.\,e., one reference per state and the trace nodes it points to.
+ *
+ * States are materialized as MSOState objects when they are read with @see #get, these objects are short-lived and
+ * inserting a state copies its words into a record. Hence, the words and values of the states leave the heap, but the
+ * heap still grows linearly with the number of states of the bag, only with a smaller factor.
+ *
+ * Buffers are taken from an @see Arena that is shared by all tables of a run, cleared tables keep their buffers and
+ * released tables return them to the arena, such that a bag frees its memory for the next bag.
+ */
+final class OffHeapStateTable implements StateTable {
+
+    /** Maximal size of a single buffer, larger tables are split into several buffers. */
+    private static final int CHUNK_BYTES = 1 << 24;
+
+    /** log_2 of the cells per buffer of the hash table. */
+    private static final int CELL_SHIFT = 22;
+
+    /** Initial number of records. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Marks replaced records in traces, as null is the trace of states without choices. */
+    private static final Trace REPLACED = Trace.choose(null, -1, -1, -1);
+
+    /** The state vector of which we materialize the states. */
+    private final MSOStateVector owner;
+
+    /** Provides the buffers. */
+    private final Arena arena;
+
+    /** Words per state. */
+    private final int words;
+
+    /** Bytes per record: the words, the value, and the hash. */
+    private final int recordBytes;
+
+    /** Records per buffer, once a table has more than one buffer. */
+    private final int recordsPerChunk;
+
+    /** The records in insertion order, record i is in records[i / recordsPerChunk]. */
+    private ByteBuffer[] records;
+
+    /** The traces of the records, @see #REPLACED for replaced records. */
+    private Trace[] traces;
+
+    /** Number of records that fit into the buffers. */
+    private int capacity;
+
+    /** Number of used records (including replaced ones). */
+    private int limit;
+
+    /** Number of states in the table. */
+    private int size;
+
+    /** The cells of the hash table (positions of records plus one, zero marks a free cell), cell i is in cells[i >>> CELL_SHIFT]. */
+    private ByteBuffer[] cells;
+
+    /** Number of cells, a power of two. */
+    private long cellCount;
+
+    /**
+     * Create an empty table, buffers are taken on the first insert.
+     * @param owner The state vector of the states.
+     * @param words The number of words of a state.
+     * @param arena The arena that provides the buffers.
+     */
+    OffHeapStateTable(MSOStateVector owner, int words, Arena arena) {
+        this.owner = owner;
+        this.arena = arena;
+        this.words = words;
+        this.recordBytes = 8 * words + 8;
+        this.recordsPerChunk = CHUNK_BYTES / recordBytes;
+    }
+
+    /** Take the initial buffers from the arena. */
+    private void allocate() {
+        this.capacity = Math.min(INITIAL_CAPACITY, recordsPerChunk);
+        this.records = new ByteBuffer[]{arena.take(capacity * recordBytes)};
+        this.traces = new Trace[capacity];
+        this.cellCount = 2 * INITIAL_CAPACITY;
+        this.cells = takeCells(cellCount);
+    }
+
+    @Override
+    public void insertOrKeepMin(MSOStateVector.MSOState state) {
+        if (records == null) allocate();
+        int hash = state.hashCode();
+        long mask = cellCount - 1;
+        long cell = mix(hash) & mask;
+        int position;
+        while ( (position = cell(cell) - 1) >= 0 ) {
+            if (hash(position) == hash && equals(position, state)) {
+                if (value(position) > state.value) {
+                    traces[position] = REPLACED;
+                    setCell(cell, append(state, hash) + 1);
+                }
+                return;
+            }
+            cell = (cell + 1) & mask;
+        }
+        setCell(cell, append(state, hash) + 1);
+        size++;
+        if (2L * limit > cellCount) grow();
+    }
+
+    /** Write a state to a new record and return its position. */
+    private int append(MSOStateVector.MSOState state, int hash) {
+        if (limit == capacity) growRecords();
+        ByteBuffer buffer = records[limit / recordsPerChunk];
+        int offset = (limit % recordsPerChunk) * recordBytes;
+        for (int j = 0; j < words; j++) buffer.putLong(offset + 8 * j, state.getWord(j));
+        buffer.putInt(offset + 8 * words, state.value);
+        buffer.putInt(offset + 8 * words + 4, hash);
+        traces[limit] = state.getTrace();
+        return limit++;
+    }
+
+    /** Double the records while they fit into one buffer, afterwards add buffers. */
+    private void growRecords() {
+        if (capacity < recordsPerChunk) {
+            int newCapacity = Math.min(2 * capacity, recordsPerChunk);
+            ByteBuffer larger = arena.take(newCapacity * recordBytes);
+            ByteBuffer old = records[0].duplicate();
+            old.clear().limit(limit * recordBytes);
+            larger.duplicate().put(old);
+            arena.give(records[0]);
+            records[0] = larger;
+            capacity = newCapacity;
+        } else {
+            records = Arrays.copyOf(records, records.length + 1);
+            records[records.length - 1] = arena.take(recordsPerChunk * recordBytes);
+            capacity += recordsPerChunk;
+        }
+        traces = Arrays.copyOf(traces, capacity);
+    }
+
+    /** Drop replaced records and double the hash table. */
+    private void grow() {
+        int kept = 0;
+        for (int i = 0; i < limit; i++) {
+            if (traces[i] == REPLACED) continue;
+            if (kept != i) {
+                ByteBuffer from = records[i / recordsPerChunk];
+                ByteBuffer to = records[kept / recordsPerChunk];
+                int fromOffset = (i % recordsPerChunk) * recordBytes;
+                int toOffset = (kept % recordsPerChunk) * recordBytes;
+                for (int j = 0; j < recordBytes; j += 8) to.putLong(toOffset + j, from.getLong(fromOffset + j));
+                traces[kept] = traces[i];
+            }
+            kept++;
+        }
+        Arrays.fill(traces, kept, limit, null);
+        limit = kept;
+        for (ByteBuffer buffer : cells) arena.give(buffer);
+        cellCount *= 2;
+        cells = takeCells(cellCount);
+        long mask = cellCount - 1;
+        for (int i = 0; i < limit; i++) {
+            long cell = mix(hash(i)) & mask;
+            while (cell(cell) != 0) cell = (cell + 1) & mask;
+            setCell(cell, i + 1);
+        }
+    }
+
+    /** Take zeroed buffers for the given number of cells. */
+    private ByteBuffer[] takeCells(long count) {
+        int perBuffer = 1 << CELL_SHIFT;
+        ByteBuffer[] buffers = new ByteBuffer[(int) Math.max(1, count / perBuffer)];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = arena.take((int) Math.min(count, perBuffer) * 4);
+            zero(buffers[i]);
+        }
+        return buffers;
+    }
+
+    /** Overwrite a buffer with zeros. */
+    private static void zero(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.capacity(); i += 8) buffer.putLong(i, 0);
+    }
+
+    private int cell(long i) {
+        return cells[(int) (i >>> CELL_SHIFT)].getInt((int) (i & ((1 << CELL_SHIFT) - 1)) << 2);
+    }
+
+    private void setCell(long i, int value) {
+        cells[(int) (i >>> CELL_SHIFT)].putInt((int) (i & ((1 << CELL_SHIFT) - 1)) << 2, value);
+    }
+
+    private long word(int position, int j) {
+        return records[position / recordsPerChunk].getLong((position % recordsPerChunk) * recordBytes + 8 * j);
+    }
+
+    private int value(int position) {
+        return records[position / recordsPerChunk].getInt((position % recordsPerChunk) * recordBytes + 8 * words);
+    }
+
+    private int hash(int position) {
+        return records[position / recordsPerChunk].getInt((position % recordsPerChunk) * recordBytes + 8 * words + 4);
+    }
+
+    /** Compare the words of a record with the words of a state. */
+    private boolean equals(int position, MSOStateVector.MSOState state) {
+        for (int j = 0; j < words; j++) {
+            if (word(position, j) != state.getWord(j)) return false;
+        }
+        return true;
+    }
+
+    /** Spread the bits of a hash code, such that linear probing works with Arrays.hashCode. */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void clear() {
+        if (records == null) return;
+        for (ByteBuffer buffer : cells) zero(buffer);
+        Arrays.fill(traces, 0, limit, null);
+        limit = 0;
+        size = 0;
+    }
+
+    @Override
+    public void release() {
+        if (records == null) return;
+        for (ByteBuffer buffer : records) arena.give(buffer);
+        for (ByteBuffer buffer : cells) arena.give(buffer);
+        records = null;
+        cells = null;
+        traces = null;
+        limit = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public MSOStateVector.MSOState get(int i) {
+        if (traces[i] == REPLACED) return null;
+        long[] state = new long[words];
+        for (int j = 0; j < words; j++) state[j] = word(i, j);
+        return owner.new MSOState(state, value(i), traces[i]);
+    }
+
+    /**
+     * The direct buffers of all tables of a run. Buffers of released tables are kept and handed out again, such that
+     * the memory of a bag is reused by the next one instead of waiting for the garbage collector.
+     */
+    static final class Arena {
+
+        /** Free buffers by capacity. */
+        private final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+
+        /**
+         * A buffer with the given capacity (in native byte order), its content is undefined.
+         * @param bytes The capacity.
+         * @return The buffer.
+         */
+        synchronized ByteBuffer take(int bytes) {
+            ArrayDeque<ByteBuffer> buffers = free.get(bytes);
+            if (buffers != null && !buffers.isEmpty()) return buffers.pop();
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Return a buffer for later use.
+         * @param buffer A buffer that was obtained by @see #take.
+         */
+        synchronized void give(ByteBuffer buffer) {
+            free.computeIfAbsent(buffer.capacity(), k -> new ArrayDeque<>()).push(buffer);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package solver;
+
+import logic.LogicalObject;
+
+import java.util.Arrays;
+
+/**
+ * The pairs of states of two state vectors that meet at a join bag, i.\,e., of weak-equal states, @see
+ * MSOStateVector#join. Every state is projected to its exact weak key (@see WeakKey), hence, states are grouped by their
+ * keys and pairs are never checked.
+ *
+ * The smaller side is indexed in a hash table over its keys, and the states of the larger side probe it with keys that
+ * are computed on the fly. Hence, a join of a few states with many states costs a pass over the many states and the
+ * resulting pairs, whichever of the two vectors is the larger one.
+ *
+ * Pairs are enumerated in units (the positions of the table of the larger side) in a fixed order, such that ranges of
+ * units can be enumerated concurrently and their results combined in order.
+ */
+final class StateJoin {
+
+    /**
+     * Receives the pairs of the join.
+     */
+    @FunctionalInterface
+    interface PairSink {
+
+        /**
+         * Accept a pair of weak-equal states.
+         * @param state The state of the joining vector.
+         * @param oState The state of the joined vector.
+         */
+        void accept(MSOStateVector.MSOState state, MSOStateVector.MSOState oState);
+    }
+
+    /** Projects the states to their keys. */
+    private final WeakKey weakKey;
+
+    /** The number of words of a key. */
+    private final int width;
+
+    /** The table of the larger side, which probes the index. */
+    private final StateTable probe;
+
+    /** True, if @see #probe belongs to the joining vector. */
+    private final boolean probeLeft;
+
+    /** The table of the smaller side, which is indexed. */
+    private final StateTable build;
+
+    /** The number of states of @see #build. */
+    private final int size;
+
+    /** The position of indexed state e in @see #build. */
+    private final int[] positions;
+
+    /** The key of indexed state e is keys[e*width,...,(e+1)*width). */
+    private final long[] keys;
+
+    /** The hash of the key of indexed state e. */
+    private final int[] hashes;
+
+    /** Open-addressing table of the first indexed state of each key plus one, zero marks a free cell. */
+    private final int[] cells;
+
+    /** The next indexed state with the same key, or -1. */
+    private final int[] next;
+
+    /**
+     * Index the smaller of two vectors by the weak keys of its states.
+     * @param logicalObjects The logical objects of the states.
+     * @param layout The layout of the states.
+     * @param states The states of the joining vector.
+     * @param oStates The states of the joined vector.
+     */
+    StateJoin(LogicalObject[] logicalObjects, StateLayout layout, StateTable states, StateTable oStates) {
+        this.weakKey = new WeakKey(logicalObjects, layout);
+        this.width = weakKey.width;
+        this.probeLeft = states.size() >= oStates.size();
+        this.probe = probeLeft ? states : oStates;
+        this.build = probeLeft ? oStates : states;
+
+        // project the smaller side to its keys
+        this.size = build.size();
+        this.positions = new int[size];
+        this.keys = new long[size * width];
+        this.hashes = new int[size];
+        int e = 0;
+        for (int i = 0; i < build.limit(); i++) {
+            MSOStateVector.MSOState state = build.get(i);
+            if (state == null) continue;
+            positions[e] = i;
+            weakKey.project(state, keys, e * width);
+            hashes[e] = WeakKey.hash(keys, e * width, (e + 1) * width);
+            e++;
+        }
+
+        // index the keys, states with equal keys are chained in their order
+        this.cells = new int[Integer.highestOneBit(Math.max(1, size)) * 4];
+        this.next = new int[size];
+        int[] last = new int[size];
+        int mask = cells.length - 1;
+        for (e = 0; e < size; e++) {
+            next[e] = -1;
+            int cell = WeakKey.mix(hashes[e]) & mask;
+            while (cells[cell] != 0 && !sameKey(cells[cell] - 1, keys, e * width, hashes[e])) cell = (cell + 1) & mask;
+            if (cells[cell] == 0) {
+                cells[cell] = e + 1;
+                last[e] = e;
+            } else {
+                int first = cells[cell] - 1;
+                next[last[first]] = e;
+                last[first] = e;
+            }
+        }
+    }
+
+    /**
+     * The number of units, @see #pairs.
+     * @return The number of units.
+     */
+    int units() {
+        return probe.limit();
+    }
+
+    /**
+     * Enumerate the pairs of a range of units, i.\,e., of positions of the larger side.
+     * @param from The first unit.
+     * @param to The unit after the last one.
+     * @param sink Receives the pairs.
+     */
+    void pairs(int from, int to, PairSink sink) {
+        long[] key = new long[width];
+        int mask = cells.length - 1;
+        for (int p = from; p < to; p++) {
+            MSOStateVector.MSOState state = probe.get(p);
+            if (state == null) continue;
+            Arrays.fill(key, 0);
+            weakKey.project(state, key, 0);
+            int hash = WeakKey.hash(key, 0, width);
+            int cell = WeakKey.mix(hash) & mask;
+            while (cells[cell] != 0 && !sameKey(cells[cell] - 1, key, 0, hash)) cell = (cell + 1) & mask;
+            if (cells[cell] == 0) continue; // no partner to join with
+            for (int e = cells[cell] - 1; e >= 0; e = next[e]) {
+                MSOStateVector.MSOState partner = build.get(positions[e]);
+                if (probeLeft) {
+                    sink.accept(state, partner);
+                } else {
+                    sink.accept(partner, state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether an indexed state has the given key.
+     * @param e The indexed state.
+     * @param key The array of the key.
+     * @param at The index of the first word of the key.
+     * @param hash The hash of the key.
+     * @return True, if the keys are equal.
+     */
+    private boolean sameKey(int e, long[] key, int at, int hash) {
+        return hashes[e] == hash && Arrays.equals(keys, e * width, (e + 1) * width, key, at, at + width);
+    }
+}
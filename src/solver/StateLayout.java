@@ -0,0 +1,75 @@
+package solver;
+
+import logic.AbstractLogicalObject;
+import logic.LogicalObject;
+
+import java.util.Arrays;
+
+/**
+ * The layout of the states of a run. By default, all logical objects are stored inline, in one word array per state. If
+ * components are interned, objects with several words get a component of their own instead, which is interned by the
+ * state tables (@see ComponentInterner), such that equal components of different states are stored once. A reference
+ * costs as much as a word, hence, objects with a single word are always stored inline.
+ *
+ * For flat records (@see OffHeapStateTable), the inline words come first, followed by the components in order.
+ */
+final class StateLayout {
+
+    /** Objects with at least this many words are stored as interned component. */
+    static final int MIN_INTERNED_WORDS = 2;
+
+    /** Maximal number of components, states track the components they own in a bit mask. */
+    static final int MAX_COMPONENTS = Long.SIZE;
+
+    /** For logical object i the offset of its words in the inline array, or the index of its component. */
+    final int[] start;
+
+    /** The number of words of logical object i. */
+    final int[] size;
+
+    /** True, if logical object i is stored as component. */
+    final boolean[] interned;
+
+    /** The number of inline words. */
+    final int inlineWords;
+
+    /** The number of words of every component. */
+    final int[] componentSizes;
+
+    /** The number of words of a flat record. */
+    final int recordWords;
+
+    /**
+     * Lay out the states and assign the slots to the logical objects. The bits per slot of every object are rounded
+     * up to a power of two, such that slots never cross a word boundary.
+     * @param logicalObjects All quantifiers and formulas.
+     * @param tw The tree width of the decomposition (not bag size).
+     * @param intern If true, objects with several words are stored in components.
+     */
+    StateLayout(LogicalObject[] logicalObjects, int tw, boolean intern) {
+        this.start = new int[logicalObjects.length];
+        this.size = new int[logicalObjects.length];
+        this.interned = new boolean[logicalObjects.length];
+        int inline = 0, components = 0, record = 0;
+        int[] componentSizes = new int[logicalObjects.length];
+        for (int i = 0; i < logicalObjects.length; i++) {
+            int length = logicalObjects[i].getStateSize(tw);
+            int bits = Integer.highestOneBit(logicalObjects[i].getBitsPerSlot(tw));
+            if (bits < logicalObjects[i].getBitsPerSlot(tw)) bits <<= 1;
+            size[i] = AbstractLogicalObject.words(length, bits);
+            interned[i] = intern && size[i] >= MIN_INTERNED_WORDS && components < MAX_COMPONENTS;
+            if (interned[i]) {
+                start[i] = components;
+                componentSizes[components++] = size[i];
+            } else {
+                start[i] = inline;
+                inline += size[i];
+            }
+            logicalObjects[i].assignSlots(start[i], length, bits, interned[i]);
+            record += size[i];
+        }
+        this.inlineWords = inline;
+        this.componentSizes = Arrays.copyOf(componentSizes, components);
+        this.recordWords = record;
+    }
+}
@@ -0,0 +1,211 @@
+package solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The states of a vector that were written to temporary files to free their memory, @see MSOStateVector#spill. The
+ * states are partitioned by the hash of their weak keys (@see WeakKey), such that weak-equal states of both sides of a
+ * join are in partitions with the same number, and the join reads them back partition by partition, in the manner of a
+ * grace hash join. A partition is a file of fixed-width records, i.\,e., the value and the flat record of a state
+ * (@see StateLayout); only the traces remain on the heap, one reference per state.
+ */
+final class StateSpill {
+
+    /** log_2 of the number of partitions. */
+    private static final int PARTITION_BITS = 6;
+
+    /** The number of partitions. */
+    static final int PARTITIONS = 1 << PARTITION_BITS;
+
+    /** The size of the stream buffer of a partition file. */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /** The vector of the states, which materializes them. */
+    private final MSOStateVector owner;
+
+    /** The layout of the states. */
+    private final StateLayout layout;
+
+    /** The file of every partition, or null if the partition is empty. */
+    private final Path[] files;
+
+    /** The traces of the states of every partition, in the order of their records. */
+    private final Trace[][] traces;
+
+    /**
+     * Write the states of a table to temporary files, the table is not modified.
+     * @param owner The vector of the states.
+     * @param layout The layout of the states.
+     * @param weakKey The weak key of the states.
+     * @param states The states.
+     */
+    StateSpill(MSOStateVector owner, StateLayout layout, WeakKey weakKey, StateTable states) {
+        this.owner = owner;
+        this.layout = layout;
+        this.files = new Path[PARTITIONS];
+        this.traces = new Trace[PARTITIONS][];
+        int[][] positions = partition(states, weakKey);
+        long[] record = new long[layout.recordWords];
+        try {
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (positions[p].length == 0) continue;
+                files[p] = Files.createTempFile("jatatosk-spill-", ".bin");
+                traces[p] = new Trace[positions[p].length];
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[p]), BUFFER_BYTES))) {
+                    for (int k = 0; k < positions[p].length; k++) {
+                        MSOStateVector.MSOState state = states.get(positions[p][k]);
+                        owner.toRecord(state, record);
+                        out.writeInt(state.value);
+                        for (long word : record) out.writeLong(word);
+                        traces[p][k] = state.getTrace();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            delete();
+            throw new UncheckedIOException("Failed to spill states to a temporary file.", e);
+        }
+    }
+
+    /**
+     * The number of states of a partition.
+     * @param p The partition.
+     * @return The number of states.
+     */
+    int size(int p) {
+        return traces[p] == null ? 0 : traces[p].length;
+    }
+
+    /**
+     * Read the states of a partition back.
+     * @param p The partition.
+     * @return A new table with the states, in the order in which they were written.
+     */
+    StateTable read(int p) {
+        HeapStateTable table = new HeapStateTable(layout);
+        if (files[p] == null) return table;
+        long[] record = new long[layout.recordWords];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(files[p]), BUFFER_BYTES))) {
+            for (Trace trace : traces[p]) {
+                int value = in.readInt();
+                for (int w = 0; w < record.length; w++) record[w] = in.readLong();
+                table.insertOrKeepMin(owner.fromRecord(record, value, trace));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spilled states.", e);
+        }
+        return table;
+    }
+
+    /** Delete the files, the states are lost. */
+    void delete() {
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (files[p] == null) continue;
+            try {
+                Files.deleteIfExists(files[p]);
+            } catch (IOException e) {
+                // a temporary file that is left behind does no harm
+            }
+            files[p] = null;
+            traces[p] = null;
+        }
+    }
+
+    /**
+     * Split a table by the partitions of its states without copying them.
+     * @param states The states.
+     * @param weakKey The weak key of the states.
+     * @return The tables of the partitions, which read from the given table.
+     */
+    static StateTable[] split(StateTable states, WeakKey weakKey) {
+        int[][] positions = partition(states, weakKey);
+        StateTable[] tables = new StateTable[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++) tables[p] = new View(states, positions[p]);
+        return tables;
+    }
+
+    /**
+     * Compute the partitions of the states of a table. The bits of the hash that choose the partition are not used by
+     * the hash table of @see StateJoin, which takes the lower bits.
+     * @param states The states.
+     * @param weakKey The weak key of the states.
+     * @return For every partition, the positions of its states in ascending order.
+     */
+    private static int[][] partition(StateTable states, WeakKey weakKey) {
+        int[] partition = new int[states.limit()];
+        int[] count = new int[PARTITIONS];
+        long[] key = new long[weakKey.width];
+        for (int i = 0; i < states.limit(); i++) {
+            MSOStateVector.MSOState state = states.get(i);
+            if (state == null) {
+                partition[i] = -1;
+                continue;
+            }
+            Arrays.fill(key, 0);
+            weakKey.project(state, key, 0);
+            partition[i] = WeakKey.mix(WeakKey.hash(key, 0, key.length)) >>> (Integer.SIZE - PARTITION_BITS);
+            count[partition[i]]++;
+        }
+        int[][] positions = new int[PARTITIONS][];
+        for (int p = 0; p < PARTITIONS; p++) positions[p] = new int[count[p]];
+        int[] fill = new int[PARTITIONS];
+        for (int i = 0; i < partition.length; i++) {
+            if (partition[i] >= 0) positions[partition[i]][fill[partition[i]]++] = i;
+        }
+        return positions;
+    }
+
+    /**
+     * The states of a partition of a table that is in memory. The view is read-only.
+     */
+    private static final class View implements StateTable {
+
+        /** The table. */
+        private final StateTable states;
+
+        /** The positions of the states of the partition in the table. */
+        private final int[] positions;
+
+        View(StateTable states, int[] positions) {
+            this.states = states;
+            this.positions = positions;
+        }
+
+        @Override
+        public void insertOrKeepMin(MSOStateVector.MSOState state) {
+            throw new UnsupportedOperationException("A partition of a table is read-only.");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("A partition of a table is read-only.");
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        @Override
+        public int limit() {
+            return positions.length;
+        }
+
+        @Override
+        public MSOStateVector.MSOState get(int i) {
+            return states.get(positions[i]);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package solver;
+
+/**
+ * The set of states of a bag. If a state is inserted that is equal to a stored one, only the one with the smaller value
+ * is kept. States are iterated in the order in which the kept states were inserted.
+ *
+ * A table is cleared rather than reallocated, such that a state vector can reuse two tables for all its operations.
+ */
+interface StateTable {
+
+    /**
+     * Insert the state, if no equal state is present. Otherwise, keep the state with the smaller value (with respect to
+     * optimization quantifiers), on ties the present one.
+     * @param state The state to insert.
+     */
+    void insertOrKeepMin(MSOStateVector.MSOState state);
+
+    /** Remove all states, the allocated memory is kept for the next use. */
+    void clear();
+
+    /** Remove all states and free the allocated memory, the table may be used again afterwards. */
+    void release();
+
+    /**
+     * The number of states in the table.
+     * @return The size.
+     */
+    int size();
+
+    /**
+     * Upper bound for positions, iterate with get(i) for i in 0,...,limit()-1 and skip null entries.
+     * @return The number of used positions.
+     */
+    int limit();
+
+    /**
+     * The state at the given position in insertion order. If the returned state is modified, the table has to be
+     * cleared before it is used again.
+     * @param i The position.
+     * @return The state, or null if it was replaced.
+     */
+    MSOStateVector.MSOState get(int i);
+}
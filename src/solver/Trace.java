@@ -0,0 +1,85 @@
+package solver;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The history of a state, from which the sets of the quantifiers are reconstructed once the dynamic program is done.
+ * States do not store these sets, as copying them on every branch would cost O(n) per state. Instead, every state
+ * points to an immutable trace node that records the choices made since its predecessor: an element that was put into
+ * a variable at an introduce-bag, or the two predecessors at a join-bag. Nodes are shared between all states that have
+ * the same history, and nodes that no state refers to anymore are garbage collected.
+ */
+final class Trace {
+
+    /** The predecessor (for joins the trace of the first state), or null at the leafs. */
+    private final Trace parent;
+
+    /** The trace of the second state of a join, or null for an introduce. */
+    private final Trace other;
+
+    /** The element put into a variable, and the quantifier and index of the variable. */
+    private final int element;
+    private final int quantifier;
+    private final int variable;
+
+    private Trace(Trace parent, Trace other, int element, int quantifier, int variable) {
+        this.parent = parent;
+        this.other = other;
+        this.element = element;
+        this.quantifier = quantifier;
+        this.variable = variable;
+    }
+
+    /**
+     * Record that an element was put into a variable.
+     * @param parent The trace of the state before the introduce.
+     * @param element The introduced element.
+     * @param quantifier Index of the quantifier.
+     * @param variable Index of the variable within the quantifier.
+     * @return The extended trace.
+     */
+    static Trace choose(Trace parent, int element, int quantifier, int variable) {
+        return new Trace(parent, null, element, quantifier, variable);
+    }
+
+    /**
+     * Record that two states were joined.
+     * @param a The trace of the first state.
+     * @param b The trace of the second state.
+     * @return The combined trace.
+     */
+    static Trace join(Trace a, Trace b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return new Trace(a, b, -1, -1, -1);
+    }
+
+    /**
+     * Reconstruct the sets of all variables by walking the trace back to the leafs. The traces of joined states
+     * stem from disjoint subtrees, hence, every node is visited once.
+     * @param trace The trace of a state (may be null).
+     * @param variables The names of the variables of the quantifiers.
+     * @return The non-empty sets by variable name.
+     */
+    static Map<String, BitSet> reconstruct(Trace trace, String[][] variables) {
+        Map<String, BitSet> assignment = new HashMap<>();
+        Deque<Trace> stack = new ArrayDeque<>();
+        if (trace != null) stack.push(trace);
+        while (!stack.isEmpty()) {
+            Trace node = stack.pop();
+            if (node.other != null) {
+                stack.push(node.other);
+            } else {
+                String X = variables[node.quantifier][node.variable];
+                if (!assignment.containsKey(X)) assignment.put(X, new BitSet());
+                assignment.get(X).set(node.element);
+            }
+            if (node.parent != null) stack.push(node.parent);
+        }
+        return assignment;
+    }
+}
@@ -0,0 +1,84 @@
+package solver;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The tree index of a run, i.\,e., the position of every vertex in the bags that contain it. Vertices that share a bag
+ * have different positions, hence, positions are in 0,...,tw. It is handed to the state vectors as map, as required by
+ * @see jdrasil.workontd.StateVector, but backed by an array over the vertices, such that a lookup does not hash.
+ */
+final class TreeIndex extends AbstractMap<Integer, Integer> {
+
+    /** The position of vertex v, or -1 if v is in no bag. */
+    private final int[] index;
+
+    /**
+     * Wrap the given positions.
+     * @param index The position of every vertex, -1 for vertices in no bag.
+     */
+    TreeIndex(int[] index) {
+        this.index = index;
+    }
+
+    /**
+     * The position of a vertex.
+     * @param v The vertex.
+     * @return Its position, or -1 if it is in no bag.
+     */
+    int of(int v) {
+        return v >= 0 && v < index.length ? index[v] : -1;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof Integer)) return null;
+        int position = of((Integer) key);
+        return position < 0 ? null : position;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new Iterator<Entry<Integer, Integer>>() {
+                    private int next = advance(0);
+
+                    private int advance(int v) {
+                        while (v < index.length && index[v] < 0) v++;
+                        return v;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < index.length;
+                    }
+
+                    @Override
+                    public Entry<Integer, Integer> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        Entry<Integer, Integer> entry = new SimpleImmutableEntry<>(next, index[next]);
+                        next = advance(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int position : index) if (position >= 0) size++;
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package solver;
+
+import logic.LogicalObject;
+
+/**
+ * The exact weak key of the states of a run: the words of the logical objects that are joined by equality, followed by
+ * the weak keys of the others (@see LogicalObject#weakKey). Two states are weak-equal if, and only if, their keys are
+ * equal, @see StateJoin.
+ */
+final class WeakKey {
+
+    /** The logical objects of the states. */
+    private final LogicalObject[] logicalObjects;
+
+    /** The layout of the states. */
+    private final StateLayout layout;
+
+    /** The number of words of a key. */
+    final int width;
+
+    /**
+     * Prepare the keys of the states of a run.
+     * @param logicalObjects The logical objects of the states.
+     * @param layout The layout of the states.
+     */
+    WeakKey(LogicalObject[] logicalObjects, StateLayout layout) {
+        this.logicalObjects = logicalObjects;
+        this.layout = layout;
+        int width = 0;
+        for (int i = 0; i < logicalObjects.length; i++) {
+            width += logicalObjects[i].requiresWeakJoin() ? logicalObjects[i].getWeakKeySize() : layout.size[i];
+        }
+        this.width = width;
+    }
+
+    /**
+     * Write the key of a state.
+     * @param state The state.
+     * @param key Receives the key, the words of the weak keys must be zero.
+     * @param at The index of the first word of the key.
+     */
+    void project(MSOStateVector.MSOState state, long[] key, int at) {
+        for (int j = 0; j < logicalObjects.length; j++) {
+            if (logicalObjects[j].requiresWeakJoin()) {
+                logicalObjects[j].weakKey(state, key, at);
+                at += logicalObjects[j].getWeakKeySize();
+            } else if (layout.interned[j]) {
+                System.arraycopy(state.getComponent(layout.start[j]), 0, key, at, layout.size[j]);
+                at += layout.size[j];
+            } else {
+                for (int w = layout.start[j]; w < layout.start[j] + layout.size[j]; w++) key[at++] = state.getWord(w);
+            }
+        }
+    }
+
+    /** The hash of the key in key[from,...,to). */
+    static int hash(long[] key, int from, int to) {
+        int hash = 1;
+        for (int w = from; w < to; w++) hash = 31 * hash + Long.hashCode(key[w]);
+        return hash;
+    }
+
+    /** Spread the bits of a hash code, such that linear probing works with Arrays.hashCode. */
+    static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}